@@ -0,0 +1,47 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+
+package com.grigoriliev.jsampler.juife.benchmarks;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.grigoriliev.jsampler.juife.AbstractTask;
+
+
+/**
+ * A task that burns the specified amount of CPU time.
+ * @author Grigor Iliev
+ */
+class CpuTask extends AbstractTask<Void> {
+	private final long tokens;
+	
+	/**
+	 * Creates a new task.
+	 * @param tokens The amount of work passed to <code>Blackhole.consumeCPU</code>,
+	 * or <code>0</code> for a task that does nothing.
+	 */
+	CpuTask(long tokens) { this.tokens = tokens; }
+	
+	public void
+	run() { if(tokens > 0) Blackhole.consumeCPU(tokens); }
+}
@@ -0,0 +1,113 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+
+package com.grigoriliev.jsampler.juife.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.grigoriliev.jsampler.juife.DeliveryPolicy;
+import com.grigoriliev.jsampler.juife.ListenerRegistry;
+import com.grigoriliev.jsampler.juife.PDUtils;
+import com.grigoriliev.jsampler.juife.event.TaskEvent;
+import com.grigoriliev.jsampler.juife.event.TaskListener;
+
+
+/**
+ * Measures the notification of the listeners of a task. Since a task can be
+ * executed only once, the benchmark doesn't execute tasks, but fires the event
+ * the way <code>AbstractTask</code> does - through a snapshot of a
+ * {@link ListenerRegistry} with a single delivery per policy. The listeners
+ * are registered once per trial, so only the fire path is measured and the
+ * case without listeners is the baseline.
+ * @author Grigor Iliev
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ListenerFanOutBenchmark {
+	/** The number of listeners of the task. */
+	@Param({ "0", "1", "16", "256" })
+	public int listeners;
+	
+	/** The delivery policy of the listeners. */
+	@Param({ "SAME_THREAD", "UI_THREAD_AND_WAIT" })
+	public DeliveryPolicy policy;
+	
+	private Blackhole blackhole;
+	
+	private final ListenerRegistry<TaskListener> registry = new ListenerRegistry<TaskListener>();
+	
+	private final TaskEvent event = new TaskEvent(this);
+	
+	private final TaskListener listener = new TaskListener() {
+		public void
+		taskPerformed(TaskEvent e) { blackhole.consume(e); }
+	};
+	
+	private final Runnable fire = new Runnable() {
+		public void
+		run() { fire0(); }
+	};
+	
+	@Setup(Level.Trial)
+	public void
+	setUp(Blackhole bh) {
+		blackhole = bh;
+		for(int i = 0; i < listeners; i++) registry.add(listener, policy);
+	}
+	
+	@Benchmark
+	public void
+	fire() throws Exception {
+		if(!registry.hasListeners(policy)) return;
+		
+		if(policy == DeliveryPolicy.UI_THREAD_AND_WAIT) PDUtils.runOnUiThreadAndWait(fire);
+		else fire.run();
+	}
+	
+	private void
+	fire0() {
+		ListenerRegistry.Snapshot<TaskListener> s = registry.getSnapshot();
+		for(int i = s.size() - 1; i >= 0; i--) {
+			if(s.getPolicy(i) != policy) continue;
+			s.get(i).taskPerformed(event);
+		}
+	}
+}
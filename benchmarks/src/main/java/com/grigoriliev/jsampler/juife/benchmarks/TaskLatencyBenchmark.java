@@ -0,0 +1,100 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+
+package com.grigoriliev.jsampler.juife.benchmarks;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.grigoriliev.jsampler.juife.DeliveryPolicy;
+import com.grigoriliev.jsampler.juife.PDUtils;
+import com.grigoriliev.jsampler.juife.TaskQueue;
+import com.grigoriliev.jsampler.juife.event.TaskEvent;
+import com.grigoriliev.jsampler.juife.event.TaskListener;
+import com.grigoriliev.jsampler.juife.event.TaskQueueEvent;
+import com.grigoriliev.jsampler.juife.event.TaskQueueListener;
+
+
+/**
+ * Measures the time from adding a task to a <code>TaskQueue</code> until its
+ * listener is notified, including the delivery of the queue events, with the
+ * delivery policies that don't involve the UI thread. Since the {@link PDUtils}
+ * implementation doesn't matter for them, the delivery through the UI thread
+ * is measured separately by {@link UiLatencyBenchmark}.
+ * @author Grigor Iliev
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TaskLatencyBenchmark {
+	/** The delivery policy of the task and queue listeners. */
+	@Param({ "SAME_THREAD", "EVENT_EXECUTOR" })
+	public DeliveryPolicy policy;
+	
+	private TaskQueue queue;
+	
+	@Setup
+	public void
+	setUp() {
+		queue = new TaskQueue("bench");
+		queue.addTaskQueueListener(new TaskQueueListener() {
+			public void
+			stateChanged(TaskQueueEvent e) { }
+		}, policy);
+		queue.start();
+	}
+	
+	@TearDown
+	public void
+	tearDown() { queue.stop(); }
+	
+	@Benchmark
+	public void
+	addAndAwait() throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		CpuTask t = new CpuTask(0);
+		t.addTaskListener(new TaskListener() {
+			public void
+			taskPerformed(TaskEvent e) { latch.countDown(); }
+		}, policy);
+		
+		queue.add(t);
+		latch.await();
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+
+package com.grigoriliev.jsampler.juife.benchmarks;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.grigoriliev.jsampler.juife.TaskList;
+import com.grigoriliev.jsampler.juife.event.GenericEvent;
+import com.grigoriliev.jsampler.juife.event.GenericListener;
+
+
+/**
+ * Measures the time needed to process a <code>TaskList</code> of CPU-bound
+ * tasks sequentially and in parallel.
+ * @author Grigor Iliev
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TaskListBenchmark {
+	/** The number of tasks in the list. */
+	@Param({ "100", "1000" })
+	public int tasks;
+	
+	/** The maximum number of tasks executed simultaneously. */
+	@Param({ "1", "4" })
+	public int concurrency;
+	
+	/** The amount of work done by each task. */
+	@Param({ "1000" })
+	public long tokens;
+	
+	@Benchmark
+	public void
+	process() throws InterruptedException {
+		TaskList list = new TaskList("bench");
+		list.setMaxConcurrency(concurrency);
+		for(int i = 0; i < tasks; i++) list.add(new CpuTask(tokens));
+		
+		final CountDownLatch latch = new CountDownLatch(1);
+		list.addListener(new GenericListener() {
+			public void
+			jobDone(GenericEvent e) { latch.countDown(); }
+		});
+		
+		list.process();
+		latch.await();
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+
+package com.grigoriliev.jsampler.juife.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.grigoriliev.jsampler.juife.TaskQueue;
+
+
+/**
+ * Measures the throughput of <code>TaskQueue.add()</code> with one and with
+ * several producer threads. The queue is unbounded, so the producers are never
+ * blocked by the workers and the cost of <code>add()</code> itself is measured.
+ * The pending tasks are removed after each iteration to keep the memory flat.
+ * @author Grigor Iliev
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TaskQueueAddBenchmark {
+	/** The number of worker threads of the queue. */
+	@Param({ "1", "4" })
+	public int workers;
+	
+	private TaskQueue queue;
+	
+	@Setup
+	public void
+	setUp() {
+		queue = new TaskQueue("bench");
+		queue.setWorkerCount(workers);
+		queue.start();
+	}
+	
+	@TearDown(Level.Iteration)
+	public void
+	removePendingTasks() { queue.removePendingTasks(); }
+	
+	@TearDown
+	public void
+	tearDown() {
+		queue.cancel();
+		queue.removePendingTasks();
+	}
+	
+	@Benchmark
+	@Threads(1)
+	public void
+	singleProducer() { queue.add(new CpuTask(0)); }
+	
+	@Benchmark
+	@Threads(4)
+	public void
+	fourProducers() { queue.add(new CpuTask(0)); }
+}
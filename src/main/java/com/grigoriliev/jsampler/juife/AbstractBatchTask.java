@@ -0,0 +1,153 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+
+package com.grigoriliev.jsampler.juife;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Provides default implementation of the <code>BatchTask</code> interface.
+ * By default the tasks in a batch are executed one after another in the
+ * calling thread. Subclasses should override {@link #runBatch} to execute
+ * the whole batch as a single operation.
+ * @author Grigor Iliev
+ */
+public abstract class AbstractBatchTask<R> extends AbstractTask<R> implements BatchTask<R> {
+	private Object batchKey = null;
+	
+	/**
+	 * Creates a new instance of <code>AbstractBatchTask</code> without batch key,
+	 * so the task is executed alone unless {@link #setBatchKey} is called.
+	 */
+	protected
+	AbstractBatchTask() { }
+	
+	/**
+	 * Gets the key identifying the tasks that can be executed together with this task.
+	 * @return The batch key of this task or <code>null</code>
+	 * if this task should always be executed alone.
+	 */
+	public Object
+	getBatchKey() { return batchKey; }
+	
+	/**
+	 * Sets the key identifying the tasks that can be executed together with this task.
+	 * Tasks with equal batch keys should be instances of the same class.
+	 * @param key The batch key of this task or <code>null</code>
+	 * if this task should always be executed alone.
+	 */
+	public void
+	setBatchKey(Object key) { batchKey = key; }
+	
+	/**
+	 * Executes the specified tasks as a single operation. If any of the tasks is not an
+	 * <code>AbstractBatchTask</code>, the tasks are executed separately. The task
+	 * listeners of all tasks are notified with at most one call to the UI thread
+	 * per delivery policy. Note that stopping any of the tasks while the batch
+	 * is running interrupts the thread executing the whole batch. If {@link #runBatch}
+	 * throws an exception, all tasks in the batch that have not set an error finish
+	 * with {@link #UNKNOWN_ERROR} error code, and the exception is rethrown
+	 * after the listeners are notified.
+	 * @param tasks The tasks to execute. The first element should be this task.
+	 * @throws IllegalStateException if any of the tasks has been started already,
+	 * in which case none of the tasks is started.
+	 */
+	public void
+	invokeBatchAndWait(List<? extends BatchTask<?>> tasks) {
+		// validate the whole batch first, so that no task is left started without being run
+		for(BatchTask<?> t : tasks) {
+			if(t.isStarted()) throw new IllegalStateException("Task already started");
+		}
+		
+		ArrayList<AbstractBatchTask<R>> batch = new ArrayList<AbstractBatchTask<R>>();
+		for(BatchTask<?> t : tasks) {
+			if(!(t instanceof AbstractBatchTask)) {
+				invokeSeparately(tasks);
+				return;
+			}
+			@SuppressWarnings("unchecked")
+			AbstractBatchTask<R> t2 = (AbstractBatchTask<R>)t;
+			batch.add(t2);
+		}
+		
+		int n = 0;
+		try {
+			for(; n < batch.size(); n++) batch.get(n).markStarted();
+		} catch(IllegalStateException x) {
+			// a task has been started meanwhile by another thread
+			for(int i = 0; i < n; i++) batch.get(i).unmarkStarted();
+			throw x;
+		}
+		
+		try {
+			// the tasks stopped before being run are excluded from the batch
+			ArrayList<AbstractBatchTask<R>> running = new ArrayList<AbstractBatchTask<R>>();
+			for(AbstractBatchTask<R> t : batch) if(t.beginRun()) running.add(t);
+			
+			try { if(!running.isEmpty()) runBatch(running); }
+			catch(Throwable x) {
+				for(AbstractBatchTask<R> t : running) t.setFailed(x);
+				throw x;
+			} finally {
+				for(AbstractBatchTask<R> t : running) t.endRun();
+			}
+		} finally {
+			for(AbstractBatchTask<R> t : batch) t.setDone(true);
+			fireTaskPerformed(batch);
+		}
+	}
+	
+	/**
+	 * Executes the specified tasks one after another. A task that throws
+	 * an exception does not prevent the execution of the rest of the tasks
+	 * and the first exception is rethrown at the end.
+	 */
+	private static void
+	invokeSeparately(List<? extends BatchTask<?>> tasks) {
+		Throwable failure = null;
+		for(BatchTask<?> t : tasks) {
+			try { t.invokeAndWait(); }
+			catch(RuntimeException | Error x) {
+				if(failure == null) failure = x;
+				else failure.addSuppressed(x);
+			}
+		}
+		
+		if(failure instanceof RuntimeException) throw (RuntimeException)failure;
+		if(failure != null) throw (Error)failure;
+	}
+	
+	/**
+	 * Executes the specified tasks. The default implementation invokes the
+	 * <code>run</code> method of each task. Subclasses should override this method
+	 * to execute the whole batch as a single operation and to set the result
+	 * or the error of each task.
+	 * @param tasks The tasks to execute.
+	 */
+	protected void
+	runBatch(List<AbstractBatchTask<R>> tasks) {
+		for(AbstractBatchTask<R> t : tasks) t.run();
+	}
+}
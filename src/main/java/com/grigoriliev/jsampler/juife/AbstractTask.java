@@ -22,7 +22,11 @@
 
 package com.grigoriliev.jsampler.juife;
 
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import com.grigoriliev.jsampler.juife.event.TaskEvent;
 import com.grigoriliev.jsampler.juife.event.TaskListener;
@@ -31,20 +35,59 @@ import com.grigoriliev.jsampler.juife.event.TaskListener;
  * Provides default implementation of the <code>Task</code> interface.
  * This class can be used to facilitate the monitoring of time-consuming task.
  *
- * Note that all event notifications are done on the event dispatching thread. This means
- * that the event handlers can safely perform operations on Swing components.
+ * Note that by default all event notifications are done on the event dispatching thread.
+ * This means that the event handlers can safely perform operations on Swing components.
+ * Listeners that don't need the UI thread can be registered with a different
+ * {@link DeliveryPolicy delivery policy} to avoid the UI thread round trip.
+ *
+ * A task can be stopped with {@link #stop}, which interrupts the thread executing it.
+ * Long-running tasks should periodically check {@link #isStopped} and return
+ * as soon as possible when it returns <code>true</code>.
  */
 public abstract class AbstractTask<R> implements Task<R>, Runnable {
 	public static int UNKNOWN_ERROR = -1;
 	
+	/** The error code of a task that has been stopped. */
+	public static int CANCELLED_ERROR = -2;
+	
+	/** The error code of a task that has exceeded its timeout. */
+	public static int TIMEOUT_ERROR = -3;
+	
 	private int errorCode = UNKNOWN_ERROR;
 	private String errorMessage = null;
 	private String errorDetails = null;
-	private boolean isDone = false;
-	private boolean started = false;
+	private volatile boolean isDone = false;
+	private volatile boolean started = false;
+	private volatile boolean stopped = false;
+	
+	/** The thread executing the task. Guarded by <code>stopLock</code>. */
+	private Thread runner = null;
+	
+	/** Set when {@link #stop} has interrupted <code>runner</code>. Guarded by <code>stopLock</code>. */
+	private boolean runnerInterrupted = false;
+	
+	/**
+	 * Set when the execution of the task has finished or has been skipped.
+	 * Guarded by <code>stopLock</code>.
+	 */
+	private boolean runEnded = false;
+	
+	/** Set when the timeout of the task is enforced by the task queue executing it. */
+	private volatile boolean queueTimed = false;
+	
+	private final Object stopLock = new Object();
 	private boolean doneWithErrors = false;
 	private String title = "com.grigoriliev.jsampler.juife.AbstractTask";
 	private String desc = null;
+	private Executor executor = null;
+	private int priority = 0;
+	private Object coalescingKey = null;
+	private long timeout = 0;
+	private long deadline = 0;
+	private boolean timedOut = false;
+	
+	/** The exception thrown by <code>run()</code> or <code>null</code>. */
+	private volatile Throwable failure = null;
 	
 	private R result = null;
 	
@@ -149,6 +192,97 @@ public abstract class AbstractTask<R> implements Task<R>, Runnable {
 	public void
 	setDescription(String desc) { this.desc = desc; }
 	
+	/**
+	 * Gets the priority of this task.
+	 * @return The priority of this task. Higher values indicate higher priority.
+	 * @see TaskQueue.Order#PRIORITY
+	 */
+	public int
+	getPriority() { return priority; }
+	
+	/**
+	 * Sets the priority of this task. Note that changing the priority
+	 * of a task, which is already queued, has no effect on its position in the queue.
+	 * @param priority The priority of this task. Higher values indicate higher priority.
+	 */
+	public void
+	setPriority(int priority) { this.priority = priority; }
+	
+	/**
+	 * Gets the key used to identify equivalent tasks.
+	 * @return The coalescing key of this task or <code>null</code>
+	 * if this task should never be coalesced.
+	 * @see TaskQueue#setCoalescing
+	 */
+	public Object
+	getCoalescingKey() { return coalescingKey; }
+	
+	/**
+	 * Sets the key used to identify equivalent tasks.
+	 * Note that the key should not be changed while the task is queued.
+	 * @param key The coalescing key of this task or <code>null</code>
+	 * if this task should never be coalesced.
+	 */
+	public void
+	setCoalescingKey(Object key) { coalescingKey = key; }
+	
+	/**
+	 * Gets the maximum time this task is allowed to run.
+	 * @return The timeout in milliseconds or <code>0</code> if there is no timeout.
+	 * @see #setTimeout
+	 */
+	public long
+	getTimeout() { return timeout; }
+	
+	/**
+	 * Sets the maximum time this task is allowed to run. When the timeout
+	 * is exceeded the task is {@link #stop stopped} and finishes with
+	 * {@link #TIMEOUT_ERROR} error code. When the task is executed in a task queue,
+	 * <code>0</code> means that the default timeout of the queue is used.
+	 * @param millis The timeout in milliseconds or <code>0</code> to disable it.
+	 * @throws IllegalArgumentException If <code>millis</code> is negative.
+	 */
+	public void
+	setTimeout(long millis) {
+		if(millis < 0) throw new IllegalArgumentException("Negative timeout: " + millis);
+		timeout = millis;
+	}
+	
+	/**
+	 * Gets the time by which this task should be done.
+	 * @return The deadline in milliseconds since the epoch or <code>0</code> if there is no deadline.
+	 * @see TaskQueue.Order#DEADLINE
+	 */
+	public long
+	getDeadline() { return deadline; }
+	
+	/**
+	 * Sets the time by which this task should be done.
+	 * Note that changing the deadline of a task, which is already queued,
+	 * has no effect on its position in the queue.
+	 * @param deadline The deadline in milliseconds since the epoch
+	 * (as returned by <code>System.currentTimeMillis()</code>) or <code>0</code> if there is no deadline.
+	 */
+	public void
+	setDeadline(long deadline) { this.deadline = deadline; }
+	
+	/**
+	 * Gets the executor used by {@link #invoke} to run this task asynchronously.
+	 * @return The executor of this task or <code>null</code>
+	 * if the default executor is used.
+	 * @see TaskExecutors#getDefaultExecutor
+	 */
+	public Executor
+	getExecutor() { return executor; }
+	
+	/**
+	 * Sets the executor used by {@link #invoke} to run this task asynchronously.
+	 * @param executor The executor to use or <code>null</code> to use the default one.
+	 * @see TaskExecutors
+	 */
+	public void
+	setExecutor(Executor executor) { this.executor = executor; }
+	
 	/**
 	 * Starts the execution of this task. This method returns immediately after the
 	 * the task is started. If you want to wait until the end of execution consider using
@@ -158,33 +292,199 @@ public abstract class AbstractTask<R> implements Task<R>, Runnable {
 	 */
 	public void
 	invoke() {
-		new Thread(getTitle()) {
+		TaskExecutors.execute(getExecutor(), getTitle(), new Runnable() {
 			public void
 			run() { invokeAndWait(); }
-		}.start();
+		});
 	}
 	
 	/**
 	 * Starts the execution of this task.
 	 * This method blocks until the task finishes its execution. Consider using {@link #invoke}
 	 * if you don't want this method to wait until the end of the task execution.
-	 * Notice that every task can be started only once.
+	 * Notice that every task can be started only once. If <code>run()</code> throws
+	 * an exception, the task finishes with {@link #UNKNOWN_ERROR} error code, unless
+	 * it has set an error itself, the listeners are notified as usual and
+	 * the exception is rethrown.
 	 * @throws IllegalStateException if the task has been started already.
 	 * @see #invoke
 	 */
 	public void
 	invokeAndWait() {
-		if(isStarted()) throw new IllegalStateException("Task already started");
-		started = true;
-		run();
-		setDone(true);
+		markStarted();
+		try {
+			if(beginRun()) {
+				ScheduledFuture<?> f = null;
+				if(getTimeout() > 0 && !queueTimed) {
+					f = TaskExecutors.timer().schedule(new Runnable() {
+						public void
+						run() { if(setTimedOut()) stopAsync(); }
+					}, getTimeout(), TimeUnit.MILLISECONDS);
+				}
+				
+				try { run(); }
+				catch(Throwable x) {
+					setFailed(x);
+					throw x;
+				} finally {
+					if(f != null) f.cancel(false);
+					endRun();
+				}
+			}
+		} finally {
+			setDone(true);
+			if(!listenerList.isEmpty()) fireTaskPerformed(Collections.singletonList(this));
+		}
+	}
+	
+	/**
+	 * Marks this task as started.
+	 * @throws IllegalStateException if the task has been started already.
+	 */
+	void
+	markStarted() {
+		synchronized(stopLock) {
+			if(isStarted()) throw new IllegalStateException("Task already started");
+			started = true;
+		}
+	}
+	
+	/**
+	 * Reverts {@link #markStarted}. Should be invoked only when the task
+	 * has not been run, to roll back a batch that failed to start.
+	 */
+	void
+	unmarkStarted() {
+		synchronized(stopLock) { started = false; }
+	}
+	
+	/**
+	 * Registers the current thread as the thread executing this task.
+	 * @return <code>false</code> if the task has been stopped
+	 * before being run and should not be executed.
+	 */
+	boolean
+	beginRun() {
+		synchronized(stopLock) {
+			if(stopped) {
+				runEnded = true;
+				// a task that has timed out before being run keeps its error
+				if(!doneWithErrors()) setCancelled();
+				return false;
+			}
+			runner = Thread.currentThread();
+			return true;
+		}
+	}
+	
+	/** Should be invoked when the execution started with {@link #beginRun} finishes. */
+	void
+	endRun() {
+		boolean b;
+		synchronized(stopLock) {
+			runner = null;
+			runEnded = true;
+			b = runnerInterrupted;
+			runnerInterrupted = false;
+		}
+		// the interrupts from other sources are left intact
+		if(!b) return;
 		
-		try { PDUtils.runOnUiThreadAndWait(new Runnable() {
+		// clear the interrupted status set by stop()
+		Thread.interrupted();
+		if(!doneWithErrors()) setCancelled();
+	}
+	
+	/**
+	 * Marks this task as failed due to the specified exception thrown during
+	 * its execution, unless the task has set an error itself.
+	 */
+	void
+	setFailed(Throwable x) {
+		failure = x;
+		if(doneWithErrors()) return;
+		setErrorCode(UNKNOWN_ERROR);
+		setErrorMessage(JuifeI18n.i18n.getError("AbstractTask.failed"));
+		setErrorDetails(x.toString());
+	}
+	
+	/**
+	 * Gets the exception thrown during the execution of this task.
+	 * @return The exception thrown by <code>run()</code> or <code>null</code>
+	 * if the task has not thrown an exception.
+	 */
+	Throwable
+	getFailure() { return failure; }
+	
+	private void
+	setCancelled() {
+		setErrorCode(CANCELLED_ERROR);
+		setErrorMessage(JuifeI18n.i18n.getError("AbstractTask.cancelled"));
+	}
+	
+	/**
+	 * Notifies this task that its timeout is enforced by the task queue executing it,
+	 * so that {@link #invokeAndWait} does not schedule a timer of its own.
+	 */
+	void
+	setQueueTimed() { queueTimed = true; }
+	
+	/**
+	 * Marks this task as timed out unless its execution has already finished.
+	 * Since the decision is made under the same lock as the end of the execution,
+	 * a task is never reported as both successfully done and timed out.
+	 * Should be followed by {@link #stop} if this method returns <code>true</code>.
+	 * @return <code>true</code> if the task is marked as timed out,
+	 * <code>false</code> if the task has finished or has timed out already.
+	 */
+	boolean
+	setTimedOut() {
+		synchronized(stopLock) {
+			if(timedOut || runEnded || done()) return false;
+			timedOut = true;
+			setErrorCode(TIMEOUT_ERROR);
+			setErrorMessage(JuifeI18n.i18n.getError("AbstractTask.timedOut"));
+			return true;
+		}
+	}
+	
+	/**
+	 * Invokes {@link #stop} asynchronously, so that a slow <code>stop()</code>
+	 * does not block the shared timer thread.
+	 */
+	private void
+	stopAsync() {
+		TaskExecutors.execute(getExecutor(), getTitle() + "-stop", new Runnable() {
 			public void
-			run() { fireTaskPerformed(); }
-		});}
-		catch(Exception x) { x.printStackTrace(); }
+			run() { stop(); }
+		});
+	}
+	
+	/**
+	 * Stops this task. If the task is not started yet, it will not be executed
+	 * when started. If the task is running, the thread executing it is interrupted.
+	 * In both cases the task finishes with {@link #CANCELLED_ERROR} error code,
+	 * unless the task sets an error itself. Subclasses overriding this method
+	 * should invoke <code>super.stop()</code>.
+	 * @see #isStopped
+	 */
+	public void
+	stop() {
+		synchronized(stopLock) {
+			stopped = true;
+			if(runner != null && !runnerInterrupted) {
+				runner.interrupt();
+				runnerInterrupted = true;
+			}
+		}
 	}
+	
+	/**
+	 * Determines whether this task has been stopped.
+	 * @return <code>true</code> if {@link #stop} has been invoked, <code>false</code> otherwise.
+	 */
+	public boolean
+	isStopped() { return stopped; }
 	///////
 	
 	/**
@@ -210,16 +510,29 @@ public abstract class AbstractTask<R> implements Task<R>, Runnable {
 	setResult(R result) { this.result = result; }
 	
 	///////
-	private final ArrayList<TaskListener> listenerList = new ArrayList<TaskListener>();
+	private final ListenerRegistry<TaskListener> listenerList = new ListenerRegistry<TaskListener>();
 	private TaskEvent taskEvent = null;
 	
+	/**
+	 * Registers the specified <code>TaskListener</code> to be notified when task is done.
+	 * The listener is notified on the UI thread and the thread executing the
+	 * task is blocked until the listener returns.
+	 * @param l The <code>TaskListener</code> to register.
+	 */
+	public void
+	addTaskListener(TaskListener l) { addTaskListener(l, DeliveryPolicy.UI_THREAD_AND_WAIT); }
+	
 	/**
 	 * Registers the specified <code>TaskListener</code> to be
-	 * notified when task is done.
+	 * notified when task is done using the specified delivery policy.
 	 * @param l The <code>TaskListener</code> to register.
+	 * @param policy Specifies on which thread the listener should be notified.
 	 */
 	public void
-	addTaskListener(TaskListener l) { listenerList.add(l); }
+	addTaskListener(TaskListener l, DeliveryPolicy policy) {
+		if(policy == null) throw new IllegalArgumentException("policy should be non-null");
+		listenerList.add(l, policy);
+	}
 	
 	/**
 	 * Removes the specified listener.
@@ -229,14 +542,35 @@ public abstract class AbstractTask<R> implements Task<R>, Runnable {
 	removeTaskListener(TaskListener l) { listenerList.remove(l); }
 	
 	/**
-	 * Notifies listeners that the task has been done.
-	 * This method should be invoked from the event-dispatching thread.
+	 * Notifies the listeners of the specified tasks that the tasks have been done.
+	 * The listeners with the same delivery policy are notified with a single
+	 * command, so the listeners of all tasks are notified with at most one call
+	 * to the UI thread per policy.
 	 */
+	static void
+	fireTaskPerformed(final List<? extends AbstractTask<?>> tasks) {
+		for(final DeliveryPolicy p : DeliveryPolicy.values()) {
+			boolean b = false;
+			for(AbstractTask<?> t : tasks) {
+				if(t.listenerList.hasListeners(p)) { b = true; break; }
+			}
+			if(!b) continue;
+			
+			p.deliver(new Runnable() {
+				public void
+				run() { for(AbstractTask<?> t : tasks) t.fireTaskPerformed(p); }
+			});
+		}
+	}
+	
+	/** Notifies the listeners with the specified delivery policy that the task has been done. */
 	private void
-	fireTaskPerformed() {
-		for(int i = listenerList.size() - 1; i >= 0; i--) {
+	fireTaskPerformed(DeliveryPolicy p) {
+		ListenerRegistry.Snapshot<TaskListener> s = listenerList.getSnapshot();
+		for(int i = s.size() - 1; i >= 0; i--) {
+			if(s.getPolicy(i) != p) continue;
 			if(taskEvent == null) taskEvent = new TaskEvent(this);
-			listenerList.get(i).taskPerformed(taskEvent);
+			s.get(i).taskPerformed(taskEvent);
 		}
 	}
 }
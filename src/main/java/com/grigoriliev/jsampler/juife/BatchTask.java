@@ -0,0 +1,58 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+
+package com.grigoriliev.jsampler.juife;
+
+import java.util.List;
+
+
+/**
+ * Defines a task that can be executed together with other tasks
+ * having an equal batch key as a single operation - for example,
+ * tasks that send requests to the same backend in one round trip.
+ * A task queue with {@link TaskQueue#setBatchSize batch size} greater than one
+ * fetches several tasks at once and executes the batch tasks with equal keys
+ * by calling {@link #invokeBatchAndWait} on the first one.
+ * @see AbstractBatchTask
+ * @author Grigor Iliev
+ */
+public interface BatchTask<R> extends Task<R> {
+	/**
+	 * Gets the key identifying the tasks that can be executed together with this task.
+	 * Tasks with equal batch keys should be of compatible type.
+	 * @return The batch key of this task or <code>null</code>
+	 * if this task should always be executed alone.
+	 */
+	Object getBatchKey();
+	
+	/**
+	 * Executes the specified tasks as a single operation.
+	 * This method blocks until all tasks finish their execution.
+	 * When this method returns, all tasks should be in the same state
+	 * they would be if executed separately with {@link #invokeAndWait}.
+	 * @param tasks The tasks to execute. The first element is this task
+	 * and all tasks have batch keys equal to the batch key of this task.
+	 * @throws IllegalStateException if any of the tasks has been started already.
+	 */
+	void invokeBatchAndWait(List<? extends BatchTask<?>> tasks);
+}
@@ -0,0 +1,75 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+
+package com.grigoriliev.jsampler.juife;
+
+
+/**
+ * Specifies the thread on which the event listeners of tasks and task queues are notified.
+ * @see AbstractTask#addTaskListener(com.grigoriliev.jsampler.juife.event.TaskListener, DeliveryPolicy)
+ * @see TaskQueue#addTaskQueueListener(com.grigoriliev.jsampler.juife.event.TaskQueueListener, DeliveryPolicy)
+ * @author Grigor Iliev
+ */
+public enum DeliveryPolicy {
+	/**
+	 * The listeners are notified on the thread that fired the event - for
+	 * example, the thread that executed the task. The listeners should return
+	 * quickly, since they delay the thread that fired the event.
+	 */
+	SAME_THREAD {
+		void
+		deliver(Runnable r) { r.run(); }
+	},
+	
+	/**
+	 * The listeners are notified asynchronously on a dedicated event thread
+	 * shared by all tasks and task queues. The events are delivered in the
+	 * order they are fired.
+	 */
+	EVENT_EXECUTOR {
+		void
+		deliver(Runnable r) { TaskExecutors.eventExecutor().execute(r); }
+	},
+	
+	/** The listeners are notified asynchronously on the UI thread. */
+	UI_THREAD {
+		void
+		deliver(Runnable r) { PDUtils.runOnUiThread(r); }
+	},
+	
+	/**
+	 * The listeners are notified on the UI thread and the thread
+	 * that fired the event is blocked until all of them return.
+	 */
+	UI_THREAD_AND_WAIT {
+		void
+		deliver(Runnable r) {
+			try { PDUtils.runOnUiThreadAndWait(r); }
+			catch(Exception x) { x.printStackTrace(); }
+		}
+	};
+	
+	/** Notifies the listeners by executing the specified command on the appropriate thread. */
+	abstract void
+	deliver(Runnable r);
+}
@@ -23,39 +23,144 @@
 package com.grigoriliev.jsampler.juife;
 
 import java.text.MessageFormat;
+import java.util.Arrays;
 import java.util.Locale;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 
 /**
  * This class provides methods for managing the locale-specific
  * data of a particular UI application or library.
+ * <p>
+ * The current locale and the resource bundles are held in an immutable snapshot,
+ * which is replaced atomically when the locale or a bundle is changed. Thus, the
+ * lookups are lock-free and can be safely done from any thread, and they never
+ * see a mix of bundles for different locales.
+ * </p><p>
+ * The message formats used to format the parameterized strings are parsed once
+ * and cached per resource bundle and key, so that formatting a string costs only
+ * the substitution of the arguments. The cache belongs to the snapshot and is
+ * discarded when the current locale or any of the resource bundles is changed.
+ * </p><p>
+ * The frequently used strings can be obtained by {@link #getHandle handle}, which
+ * costs an array index per lookup. The bundles can also be precompiled at build time
+ * into {@link StringTable string tables}, which are loaded instead of the
+ * <code>.properties</code> files when available.
+ * </p>
  * @author Grigor Iliev
  */
 public class I18n {
-	private Locale currentLocale = null;
+	/** The categories of strings, each of which is provided by a separate resource bundle. */
+	public enum Category {
+		/** Button labels. */
+		BUTTONS,
+		
+		/** Error messages. */
+		ERRORS,
+		
+		/** Common labels. */
+		LABELS,
+		
+		/** Log messages. */
+		LOGS,
+		
+		/** Menu labels. */
+		MENUS,
+		
+		/** Common messages. */
+		MESSAGES
+	}
 	
-	private ResourceBundle buttonLabels;	// buttons labels
-	private ResourceBundle errors;		// errors
-	private ResourceBundle labels;		// labels
-	private ResourceBundle logMessages;	// log messages
-	private ResourceBundle menuLabels;	// menu labels
-	private ResourceBundle messages;	// messages
+	private static final int BUNDLE_COUNT = Category.values().length;
 	
-	private String buttonsBundle;
-	private String errorsBundle;
-	private String labelsBundle;
-	private String logsBundle;
-	private String menusBundle;
-	private String messagesBundle;
+	/** An immutable snapshot of the current locale and resource bundles. */
+	private static final class Bundles {
+		final Locale locale;
+		final String[] baseNames;
+		final ResourceBundle[] bundles;
+		
+		/**
+		 * The strings for the registered handles, per category.
+		 * An array is created on the first lookup by handle.
+		 */
+		final AtomicReferenceArray<String[]> handleStrings =
+			new AtomicReferenceArray<String[]>(BUNDLE_COUNT);
+		
+		/** The parsed message formats per resource bundle and key. */
+		final ConcurrentHashMap<ResourceBundle, ConcurrentHashMap<String, MessageFormat>> formats =
+			new ConcurrentHashMap<ResourceBundle, ConcurrentHashMap<String, MessageFormat>>();
+		
+		Bundles(Locale locale, String[] baseNames, ResourceBundle[] bundles) {
+			this.locale = locale;
+			this.baseNames = baseNames;
+			this.bundles = bundles;
+		}
+	}
+	
+	private final AtomicReference<Bundles> bundles = new AtomicReference<Bundles> (
+		new Bundles(null, new String[BUNDLE_COUNT], new ResourceBundle[BUNDLE_COUNT])
+	);
+	
+	/** Maps the keys to handles in a single category. The handles never change. */
+	private static final class HandleTable {
+		final ConcurrentHashMap<String, Integer> handles = new ConcurrentHashMap<String, Integer>();
+		
+		/** The keys indexed by handle. Replaced when a new key is registered. */
+		volatile String[] keys = new String[0];
+		
+		int
+		getHandle(String key) {
+			Integer h = handles.get(key);
+			return h != null ? h : register(key);
+		}
+		
+		private synchronized int
+		register(String key) {
+			Integer h = handles.get(key);
+			if(h != null) return h;
+			
+			String[] k = Arrays.copyOf(keys, keys.length + 1);
+			k[keys.length] = key;
+			keys = k;
+			handles.put(key, keys.length - 1);
+			return keys.length - 1;
+		}
+	}
+	
+	private final HandleTable[] handleTables = new HandleTable[BUNDLE_COUNT];
 	
 	
 	/** Creates a new instance of <code>I18n</code>. */
 	public
-	I18n() { }
-
+	I18n() {
+		for(int i = 0; i < BUNDLE_COUNT; i++) handleTables[i] = new HandleTable();
+	}
+	
+	/**
+	 * Loads the resource bundle with the specified base name and locale.
+	 * A precompiled {@link StringTable string table} is used if available, in which
+	 * case no <code>.properties</code> files are parsed. Note that unlike
+	 * <code>ResourceBundle.getBundle</code>, this method falls back to the base table
+	 * rather than to the default locale if there is no table for the specified locale.
+	 * Both the tables and the <code>.properties</code> files are looked up in the
+	 * module of the actual class of this object, so a subclass in another module
+	 * finds its own resources.
+	 * @param baseName The base name of the resource bundle.
+	 * @param locale The locale for which a resource bundle is desired.
+	 * @return The resource bundle with the specified base name and locale.
+	 */
 	protected ResourceBundle getBundle(String baseName, Locale locale) {
-		return ResourceBundle.getBundle(baseName, locale);
+		try {
+			StringTable t = StringTable.load(getClass(), baseName, locale);
+			if(t != null) return t;
+		} catch(Exception x) {
+			x.printStackTrace();
+		}
+		
+		return ResourceBundle.getBundle(baseName, locale, getClass().getModule());
 	}
 	
 	/**
@@ -65,25 +170,12 @@ public class I18n {
 	 */
 	public void
 	setCurrentLocale(String language, String country) {
-		currentLocale = new Locale(language, country);
-		
-		if(buttonsBundle == null) buttonLabels = null;
-		else buttonLabels = getBundle(buttonsBundle, getCurrentLocale());
+		Locale locale = new Locale(language, country);
 		
-		if(labelsBundle == null) labels = null;
-		else labels = getBundle(labelsBundle, getCurrentLocale());
-		
-		if(menusBundle == null) menuLabels = null;
-		else menuLabels = getBundle(menusBundle, getCurrentLocale());
-		
-		if(errorsBundle == null) errors = null;
-		else errors = getBundle(errorsBundle, getCurrentLocale());
-		
-		if(messagesBundle == null) messages = null;
-		else messages = getBundle(messagesBundle, getCurrentLocale());
-		
-		if(logsBundle == null) logMessages = null;
-		else logMessages = getBundle(logsBundle, getCurrentLocale());
+		for(;;) {
+			Bundles b = bundles.get();
+			if(bundles.compareAndSet(b, createBundles(locale, b.baseNames))) return;
+		}
 	}
 	
 	/**
@@ -91,9 +183,51 @@ public class I18n {
 	 * @return The current locale.
 	 */
 	public Locale
-	getCurrentLocale() {
-		if(currentLocale == null) setCurrentLocale("en", "US");
-		return currentLocale;
+	getCurrentLocale() { return getSnapshot().locale; }
+	
+	/**
+	 * Gets the current snapshot, initializing the current locale if it is not set yet.
+	 */
+	private Bundles
+	getSnapshot() {
+		Bundles b = bundles.get();
+		if(b.locale != null) return b;
+		
+		Locale locale = new Locale("en", "US");
+		for(;;) {
+			Bundles b2 = createBundles(locale, b.baseNames);
+			if(bundles.compareAndSet(b, b2)) return b2;
+			b = bundles.get();
+			if(b.locale != null) return b;
+		}
+	}
+	
+	private Bundles
+	createBundles(Locale locale, String[] baseNames) {
+		ResourceBundle[] rbs = new ResourceBundle[BUNDLE_COUNT];
+		for(int i = 0; i < BUNDLE_COUNT; i++) {
+			if(baseNames[i] != null) rbs[i] = getBundle(baseNames[i], locale);
+		}
+		return new Bundles(locale, baseNames, rbs);
+	}
+	
+	/**
+	 * Replaces the base name and the resource bundle with the specified index.
+	 */
+	private void
+	setBundle(Category c, String baseName) {
+		int index = c.ordinal();
+		for(;;) {
+			Bundles b = getSnapshot();
+			
+			String[] baseNames = b.baseNames.clone();
+			baseNames[index] = baseName;
+			
+			ResourceBundle[] rbs = b.bundles.clone();
+			rbs[index] = baseName == null ? null : getBundle(baseName, b.locale);
+			
+			if(bundles.compareAndSet(b, new Bundles(b.locale, baseNames, rbs))) return;
+		}
 	}
 	
 	/**
@@ -102,12 +236,7 @@ public class I18n {
 	 * provide the button labels (a fully qualified class name).
 	 */
 	public void
-	setButtonsBundle(String baseName) {
-		buttonsBundle = baseName;
-		
-		if(buttonsBundle == null) buttonLabels = null;
-		else buttonLabels = getBundle(buttonsBundle, getCurrentLocale());
-	}
+	setButtonsBundle(String baseName) { setBundle(Category.BUTTONS, baseName); }
 	
 	/**
 	 * Sets the resource bundle that will provide the common labels.
@@ -115,12 +244,7 @@ public class I18n {
 	 * provide the common labels (a fully qualified class name).
 	 */
 	public void
-	setLabelsBundle(String baseName) {
-		labelsBundle = baseName;
-		
-		if(labelsBundle == null) labels = null;
-		else labels = getBundle(labelsBundle, getCurrentLocale());
-	}
+	setLabelsBundle(String baseName) { setBundle(Category.LABELS, baseName); }
 	
 	/**
 	 * Sets the resource bundle that will provide the menu labels.
@@ -128,12 +252,7 @@ public class I18n {
 	 * provide the menu labels (a fully qualified class name).
 	 */
 	public void
-	setMenusBundle(String baseName) {
-		menusBundle = baseName;
-		
-		if(menusBundle == null) menuLabels = null;
-		else menuLabels = getBundle(menusBundle, getCurrentLocale());
-	}
+	setMenusBundle(String baseName) { setBundle(Category.MENUS, baseName); }
 	
 	/**
 	 * Sets the resource bundle that will provide the error messages.
@@ -141,12 +260,7 @@ public class I18n {
 	 * provide the error messages (a fully qualified class name).
 	 */
 	public void
-	setErrorsBundle(String baseName) {
-		errorsBundle = baseName;
-		
-		if(errorsBundle == null) errors = null;
-		else errors = getBundle(errorsBundle, getCurrentLocale());
-	}
+	setErrorsBundle(String baseName) { setBundle(Category.ERRORS, baseName); }
 	
 	/**
 	 * Sets the resource bundle that will provide the common messages.
@@ -154,12 +268,7 @@ public class I18n {
 	 * provide the common messages (a fully qualified class name).
 	 */
 	public void
-	setMessagesBundle(String baseName) {
-		messagesBundle = baseName;
-		
-		if(messagesBundle == null) messages = null;
-		else messages = getBundle(messagesBundle, getCurrentLocale());
-	}
+	setMessagesBundle(String baseName) { setBundle(Category.MESSAGES, baseName); }
 	
 	/**
 	 * Sets the resource bundle that will provide the log messages.
@@ -167,37 +276,123 @@ public class I18n {
 	 * provide the log messages (a fully qualified class name).
 	 */
 	public void
-	setLogsBundle(String baseName) {
-		logsBundle = baseName;
-		
-		if(logsBundle == null) logMessages = null;
-		else logMessages = getBundle(logsBundle, getCurrentLocale());
-	}
+	setLogsBundle(String baseName) { setBundle(Category.LOGS, baseName); }
 	
 	/**
 	 * Gets a string for the given key from the specified resource bundle.
 	 * @param key The key for the desired string.
-	 * @param rb The resource bundle from which a string should be obtained.
+	 * @param c The category of the resource bundle from which a string should be obtained.
 	 * @return The string for the given key.
 	 */
 	private String
-	getString(String key, ResourceBundle rb) {
-		return rb.getString(key);
+	getString(String key, Category c) {
+		return getSnapshot().bundles[c.ordinal()].getString(key);
 	}
 	
 	/**
 	 * Gets a string for the given pattern and arguments from the specified resource bundle.
 	 * @param pattern The pattern for the desired string.
-	 * @param rb The resource bundle from which a string should be obtained.
+	 * @param c The category of the resource bundle from which a string should be obtained.
 	 * @param arguments The arguments to be used to format the string.
 	 * @return The string for the given pattern and arguments.
 	 */
 	private String
-	getString(String pattern, ResourceBundle rb, Object[] arguments) {
-		MessageFormat mf = new MessageFormat("");
-		mf.setLocale(getCurrentLocale());
-		mf.applyPattern(getString(pattern, rb));
-		return mf.format(arguments);
+	getString(String pattern, Category c, Object[] arguments) {
+		MessageFormat mf = getFormat(pattern, getSnapshot(), c.ordinal());
+		// MessageFormat is not thread safe
+		synchronized(mf) { return mf.format(arguments); }
+	}
+	
+	/**
+	 * Gets the parsed message format for the given pattern key from the specified
+	 * resource bundle. The format is parsed on the first request and then cached.
+	 */
+	private static MessageFormat
+	getFormat(String pattern, Bundles b, int index) {
+		ResourceBundle rb = b.bundles[index];
+		
+		ConcurrentHashMap<String, MessageFormat> bundleFormats = b.formats.get(rb);
+		if(bundleFormats == null) {
+			bundleFormats = new ConcurrentHashMap<String, MessageFormat>();
+			ConcurrentHashMap<String, MessageFormat> bf = b.formats.putIfAbsent(rb, bundleFormats);
+			if(bf != null) bundleFormats = bf;
+		}
+		
+		MessageFormat mf = bundleFormats.get(pattern);
+		if(mf != null) return mf;
+		
+		mf = new MessageFormat("");
+		mf.setLocale(b.locale);
+		mf.applyPattern(rb.getString(pattern));
+		
+		MessageFormat mf2 = bundleFormats.putIfAbsent(pattern, mf);
+		return mf2 != null ? mf2 : mf;
+	}
+	
+	/**
+	 * Gets a handle for the string with the specified key, which allows the string
+	 * to be obtained with {@link #getString(Category, int)} by an array index,
+	 * without hashing the key. The handle of a key never changes,
+	 * so it can be obtained once and used with all locales.
+	 * @param c The category of the string.
+	 * @param key The key of the string.
+	 * @return The handle of the string.
+	 */
+	public int
+	getHandle(Category c, String key) {
+		if(key == null) throw new IllegalArgumentException("key should be non-null");
+		return handleTables[c.ordinal()].getHandle(key);
+	}
+	
+	/**
+	 * Gets the string with the specified handle.
+	 * @param c The category of the string.
+	 * @param handle A handle obtained with {@link #getHandle} for the same category.
+	 * @return The string with the specified handle, or a marker of the form
+	 * <code>!handle!</code> if the handle has not been obtained from this object.
+	 * @throws java.util.MissingResourceException If there is no string for the key of the handle.
+	 */
+	public String
+	getString(Category c, int handle) {
+		int i = c.ordinal();
+		Bundles b = getSnapshot();
+		if(handle < 0) return getMissingString(handle);
+		
+		String[] strings = b.handleStrings.get(i);
+		if(strings == null || handle >= strings.length) {
+			String[] keys = handleTables[i].keys;
+			if(handle >= keys.length) return getMissingString(handle);
+			
+			// the strings are resolved for all handles registered so far
+			strings = new String[keys.length];
+			ResourceBundle rb = b.bundles[i];
+			for(int j = 0; j < keys.length; j++) {
+				if(rb != null && rb.containsKey(keys[j])) strings[j] = rb.getString(keys[j]);
+			}
+			b.handleStrings.set(i, strings);
+		}
+		
+		String s = strings[handle];
+		if(s != null) return s;
+		return getString(handleTables[i].keys[handle], c); // throws an exception
+	}
+	
+	/** Gets the marker returned for a handle, which is not registered. */
+	private static String
+	getMissingString(int handle) { return "!" + handle + "!"; }
+	
+	/**
+	 * Discards the cached message formats. This method is invoked automatically
+	 * when the current locale or a resource bundle is changed and should be
+	 * invoked explicitly only if the content of the resource bundles is reloaded.
+	 */
+	public void
+	clearFormatCache() {
+		for(;;) {
+			Bundles b = bundles.get();
+			Bundles b2 = new Bundles(b.locale, b.baseNames, b.bundles);
+			if(bundles.compareAndSet(b, b2)) return;
+		}
 	}
 
 	/**
@@ -207,7 +402,7 @@ public class I18n {
 	 */
 	public String
 	getButtonLabel(String key) {
-		return getString(key, buttonLabels);
+		return getString(key, Category.BUTTONS);
 	}
 	
 	/**
@@ -218,7 +413,7 @@ public class I18n {
 	 */
 	public String
 	getButtonLabel(String pattern, Object... arguments) {
-		return getString(pattern, buttonLabels, arguments);
+		return getString(pattern, Category.BUTTONS, arguments);
 	}
 	
 	/**
@@ -228,7 +423,7 @@ public class I18n {
 	 */
 	public String
 	getError(String key) {
-		return getString(key, errors);
+		return getString(key, Category.ERRORS);
 	}
 	
 	/**
@@ -239,7 +434,7 @@ public class I18n {
 	 */
 	public String
 	getError(String pattern, Object... arguments) {
-		return getString(pattern, errors, arguments);
+		return getString(pattern, Category.ERRORS, arguments);
 	}
 
 	/**
@@ -249,7 +444,7 @@ public class I18n {
 	 */
 	public String
 	getLabel(String key) {
-		return getString(key, labels);
+		return getString(key, Category.LABELS);
 	}
 	
 	/**
@@ -260,7 +455,7 @@ public class I18n {
 	 */
 	public String
 	getLabel(String pattern, Object... arguments) {
-		return getString(pattern, labels, arguments);
+		return getString(pattern, Category.LABELS, arguments);
 	}
 	
 	/**
@@ -270,7 +465,7 @@ public class I18n {
 	 */
 	public String
 	getLogMessage(String key) {
-		return getString(key, logMessages);
+		return getString(key, Category.LOGS);
 	}
 	
 	/**
@@ -281,7 +476,7 @@ public class I18n {
 	 */
 	public String
 	getLogMessage(String pattern, Object... arguments) {
-		return getString(pattern, logMessages, arguments);
+		return getString(pattern, Category.LOGS, arguments);
 	}
 	
 	/**
@@ -291,7 +486,7 @@ public class I18n {
 	 */
 	public String
 	getMenuLabel(String key) {
-		return getString(key, menuLabels);
+		return getString(key, Category.MENUS);
 	}
 	
 	/**
@@ -302,7 +497,7 @@ public class I18n {
 	 */
 	public String
 	getMenuLabel(String pattern, Object... arguments) {
-		return getString(pattern, menuLabels, arguments);
+		return getString(pattern, Category.MENUS, arguments);
 	}
 	
 	/**
@@ -312,7 +507,7 @@ public class I18n {
 	 */
 	public String
 	getMessage(String key) {
-		return getString(key, messages);
+		return getString(key, Category.MESSAGES);
 	}
 	
 	/**
@@ -323,6 +518,6 @@ public class I18n {
 	 */
 	public String
 	getMessage(String pattern, Object... arguments) {
-		return getString(pattern, messages, arguments);
+		return getString(pattern, Category.MESSAGES, arguments);
 	}
 }
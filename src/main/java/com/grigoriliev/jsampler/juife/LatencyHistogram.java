@@ -0,0 +1,162 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+
+package com.grigoriliev.jsampler.juife;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+
+/**
+ * A concurrent histogram of durations in nanoseconds with bounded relative error.
+ * The values are counted in log-linear buckets - each power of two is split
+ * into 16 equal sub-buckets, so the value reported for a percentile differs
+ * from the recorded value by less than 6.25%. Recording a value is lock-free
+ * and does not allocate.
+ * @author Grigor Iliev
+ */
+public final class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+	
+	private static final LongBinaryOperator MAX = new LongBinaryOperator() {
+		public long
+		applyAsLong(long left, long right) { return Math.max(left, right); }
+	};
+	
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(MAX, 0);
+	
+	/** Creates a new empty histogram. */
+	public
+	LatencyHistogram() { }
+	
+	/**
+	 * Records the specified duration. Negative values are recorded as <code>0</code>.
+	 * @param nanos The duration in nanoseconds.
+	 */
+	public void
+	record(long nanos) {
+		if(nanos < 0) nanos = 0;
+		counts.incrementAndGet(getBucketIndex(nanos));
+		sum.add(nanos);
+		max.accumulate(nanos);
+	}
+	
+	/**
+	 * Gets a snapshot of the current state of this histogram. Note that the values
+	 * recorded while the snapshot is taken may be partially reflected in it.
+	 * @return A snapshot of this histogram.
+	 */
+	public Snapshot
+	getSnapshot() {
+		long[] a = new long[BUCKET_COUNT];
+		long n = 0;
+		for(int i = 0; i < a.length; i++) {
+			a[i] = counts.get(i);
+			n += a[i];
+		}
+		return new Snapshot(a, n, sum.sum(), max.get());
+	}
+	
+	private static int
+	getBucketIndex(long v) {
+		if(v < SUB_BUCKET_COUNT) return (int)v;
+		int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKET_COUNT + (int)((v >>> shift) - SUB_BUCKET_COUNT);
+	}
+	
+	/** Gets the highest value that is counted in the specified bucket. */
+	private static long
+	getBucketMaxValue(int index) {
+		if(index < SUB_BUCKET_COUNT) return index;
+		int shift = index / SUB_BUCKET_COUNT - 1;
+		long sub = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+		return ((sub + 1) << shift) - 1;
+	}
+	
+	/** An immutable snapshot of a <code>LatencyHistogram</code>. */
+	public static final class Snapshot {
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+		private final long max;
+		
+		private
+		Snapshot(long[] counts, long count, long sum, long max) {
+			this.counts = counts;
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+		}
+		
+		/**
+		 * Gets the number of recorded values.
+		 * @return The number of recorded values.
+		 */
+		public long
+		getCount() { return count; }
+		
+		/**
+		 * Gets the mean of the recorded values.
+		 * @return The mean value in nanoseconds or <code>0</code> if the histogram is empty.
+		 */
+		public double
+		getMean() { return count == 0 ? 0 : (double)sum / count; }
+		
+		/**
+		 * Gets the highest recorded value.
+		 * @return The highest recorded value in nanoseconds.
+		 */
+		public long
+		getMax() { return max; }
+		
+		/**
+		 * Gets the value below or equal to which the specified percentage of the
+		 * recorded values fall.
+		 * @param percentile The percentile, from <code>0</code> to <code>100</code>.
+		 * @return The value at the specified percentile in nanoseconds
+		 * or <code>0</code> if the histogram is empty.
+		 * @throws IllegalArgumentException If <code>percentile</code> is out of range.
+		 */
+		public long
+		getValueAtPercentile(double percentile) {
+			if(percentile < 0 || percentile > 100) {
+				throw new IllegalArgumentException("Invalid percentile: " + percentile);
+			}
+			if(count == 0) return 0;
+			
+			long rank = Math.max(1, (long)Math.ceil(percentile / 100 * count));
+			long n = 0;
+			for(int i = 0; i < counts.length; i++) {
+				n += counts[i];
+				if(n >= rank) return Math.min(getBucketMaxValue(i), max);
+			}
+			return max;
+		}
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+package com.grigoriliev.jsampler.juife;
+
+/**
+ * A thread-safe list of event listeners, each of which may have a
+ * {@link DeliveryPolicy}. The listeners are kept in an immutable snapshot,
+ * which is replaced on each modification (copy-on-write). Firing events
+ * iterates a snapshot without locking or allocation, and the listeners
+ * may be added or removed concurrently, even by the listeners themselves.
+ * @param <L> The listener type.
+ * @author Grigor Iliev
+ */
+public final class ListenerRegistry<L> {
+	private static final Snapshot<Object> EMPTY =
+		new Snapshot<Object>(new Object[0], new DeliveryPolicy[0], 0);
+	
+	private volatile Snapshot<L> snapshot = empty();
+	
+	/** Creates a new registry without listeners. */
+	public
+	ListenerRegistry() { }
+	
+	/**
+	 * Gets the current listeners. The returned snapshot is not affected
+	 * by subsequent modifications of this registry.
+	 * @return An immutable snapshot of the registered listeners.
+	 */
+	public Snapshot<L>
+	getSnapshot() { return snapshot; }
+	
+	/**
+	 * Determines whether there are no registered listeners.
+	 * @return <code>true</code> if there are no registered listeners,
+	 * <code>false</code> otherwise.
+	 */
+	public boolean
+	isEmpty() { return snapshot.listeners.length == 0; }
+	
+	/**
+	 * Determines whether there are listeners registered with the specified delivery policy.
+	 * @param p The delivery policy.
+	 * @return <code>true</code> if there is at least one listener with the
+	 * specified delivery policy, <code>false</code> otherwise.
+	 */
+	public boolean
+	hasListeners(DeliveryPolicy p) { return snapshot.hasListeners(p); }
+	
+	/**
+	 * Registers the specified listener without delivery policy.
+	 * @param l The listener to register.
+	 */
+	public void
+	add(L l) { add(l, null); }
+	
+	/**
+	 * Registers the specified listener with the specified delivery policy.
+	 * @param l The listener to register.
+	 * @param policy The delivery policy of the listener or <code>null</code>.
+	 */
+	public synchronized void
+	add(L l, DeliveryPolicy policy) {
+		Snapshot<L> s = snapshot;
+		int n = s.listeners.length;
+		Object[] listeners = new Object[n + 1];
+		DeliveryPolicy[] policies = new DeliveryPolicy[n + 1];
+		System.arraycopy(s.listeners, 0, listeners, 0, n);
+		System.arraycopy(s.policies, 0, policies, 0, n);
+		listeners[n] = l;
+		policies[n] = policy;
+		snapshot = new Snapshot<L>(listeners, policies, s.policyMask | mask(policy));
+	}
+	
+	/**
+	 * Removes the first occurrence of the specified listener.
+	 * @param l The listener to remove.
+	 * @return <code>true</code> if the listener was registered,
+	 * <code>false</code> otherwise.
+	 */
+	public synchronized boolean
+	remove(L l) {
+		Snapshot<L> s = snapshot;
+		int n = s.listeners.length;
+		int k = -1;
+		for(int i = 0; i < n; i++) {
+			Object o = s.listeners[i];
+			if(o == l || (o != null && o.equals(l))) { k = i; break; }
+		}
+		if(k == -1) return false;
+		
+		if(n == 1) {
+			snapshot = empty();
+			return true;
+		}
+		
+		Object[] listeners = new Object[n - 1];
+		DeliveryPolicy[] policies = new DeliveryPolicy[n - 1];
+		System.arraycopy(s.listeners, 0, listeners, 0, k);
+		System.arraycopy(s.policies, 0, policies, 0, k);
+		System.arraycopy(s.listeners, k + 1, listeners, k, n - k - 1);
+		System.arraycopy(s.policies, k + 1, policies, k, n - k - 1);
+		
+		int policyMask = 0;
+		for(DeliveryPolicy p : policies) policyMask |= mask(p);
+		snapshot = new Snapshot<L>(listeners, policies, policyMask);
+		return true;
+	}
+	
+	/** Removes all listeners. */
+	public synchronized void
+	clear() { snapshot = empty(); }
+	
+	private static int
+	mask(DeliveryPolicy p) { return p == null ? 0 : 1 << p.ordinal(); }
+	
+	@SuppressWarnings("unchecked")
+	private static <L> Snapshot<L>
+	empty() { return (Snapshot<L>)EMPTY; }
+	
+	/**
+	 * An immutable snapshot of the listeners in a <code>ListenerRegistry</code>,
+	 * in the order they were registered.
+	 * @param <L> The listener type.
+	 */
+	public static final class Snapshot<L> {
+		private final Object[] listeners;
+		private final DeliveryPolicy[] policies;
+		private final int policyMask;
+		
+		private
+		Snapshot(Object[] listeners, DeliveryPolicy[] policies, int policyMask) {
+			this.listeners = listeners;
+			this.policies = policies;
+			this.policyMask = policyMask;
+		}
+		
+		/** Gets the number of listeners in this snapshot. */
+		public int
+		size() { return listeners.length; }
+		
+		/** Determines whether this snapshot contains no listeners. */
+		public boolean
+		isEmpty() { return listeners.length == 0; }
+		
+		/** Gets the listener at the specified position. */
+		@SuppressWarnings("unchecked")
+		public L
+		get(int index) { return (L)listeners[index]; }
+		
+		/**
+		 * Gets the delivery policy of the listener at the specified position.
+		 * @return The delivery policy or <code>null</code> if the listener
+		 * was registered without one.
+		 */
+		public DeliveryPolicy
+		getPolicy(int index) { return policies[index]; }
+		
+		/**
+		 * Determines whether this snapshot contains listeners
+		 * with the specified delivery policy.
+		 */
+		public boolean
+		hasListeners(DeliveryPolicy p) { return (policyMask & mask(p)) != 0; }
+	}
+}
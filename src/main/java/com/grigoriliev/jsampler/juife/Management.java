@@ -0,0 +1,70 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+
+package com.grigoriliev.jsampler.juife;
+
+import java.util.Optional;
+
+import com.grigoriliev.jsampler.juife.management.TaskManagement;
+
+
+/**
+ * Registers the MXBeans of the {@link TaskQueue#setManaged managed} task queues
+ * and task lists, if the <code>java.management</code> module is present.
+ * Since the module is optional, {@link TaskManagement} is not loaded when the
+ * module is missing, and the queues and lists are simply not managed.
+ * @author Grigor Iliev
+ */
+final class Management {
+	private static final boolean AVAILABLE = isManagementPresent();
+	
+	private
+	Management() { }
+	
+	/**
+	 * Determines whether the <code>java.management</code> module is present.
+	 * @return <code>true</code> if the MXBeans can be registered, <code>false</code> otherwise.
+	 */
+	static boolean
+	isAvailable() { return AVAILABLE; }
+	
+	static void
+	register(TaskQueue queue) { if(AVAILABLE) TaskManagement.register(queue); }
+	
+	static void
+	register(TaskList list) { if(AVAILABLE) TaskManagement.register(list); }
+	
+	static void
+	unregister(Object obj) { if(AVAILABLE) TaskManagement.unregister(obj); }
+	
+	private static boolean
+	isManagementPresent() {
+		Module m = Management.class.getModule();
+		ModuleLayer l = m.getLayer();
+		if(l == null) l = ModuleLayer.boot();
+		
+		// with "requires static" the module is read only if it has been resolved
+		Optional<Module> mm = l.findModule("java.management");
+		return mm.isPresent() && m.canRead(mm.get());
+	}
+}
@@ -22,41 +22,221 @@
 
 package com.grigoriliev.jsampler.juife;
 
+import com.grigoriliev.jsampler.juife.impl.HeadlessPDUtilsImpl;
 import com.grigoriliev.jsampler.juife.impl.PDUtilsImpl;
 
-/** Platform dependent utilities */
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Platform dependent utilities. The platform dependent part is provided by
+ * a {@link PDUtilsImpl} implementation, which is discovered using
+ * <code>java.util.ServiceLoader</code>. The following implementations are built in:
+ * <ul>
+ * <li><code>android</code> - uses the main thread of the Android application;</li>
+ * <li><code>swing</code> - uses the Swing event dispatch thread;</li>
+ * <li><code>headless</code> - uses a dedicated event loop thread;</li>
+ * <li><code>javafx</code> - uses the JavaFX application thread;</li>
+ * <li><code>direct</code> - runs everything inline on the calling thread, without
+ * a UI thread; suitable only when no UI toolkit is used.</li>
+ * </ul>
+ * The implementation can be chosen by name (or class name) with the
+ * <code>juife.pdutils</code> system property. Otherwise the available
+ * implementation with the highest priority is used, which is
+ * <code>android</code>, <code>swing</code> and <code>headless</code>
+ * in that order for the built-in ones.
+ * <p>
+ * When batching is enabled (see {@link #setBatchingEnabled}), the runnables
+ * posted from other threads are accumulated in a lock-free buffer and a single
+ * UI event is posted to run all runnables accumulated in the meantime.
+ * </p>
+ */
 public class PDUtils {
-	private static PDUtilsImpl impl = null;
-	static {
-		String s = System.getProperties().getProperty("java.vm.name");
-		try {
-			if (s == null) {
-				impl = (PDUtilsImpl)Class.forName("com.grigoriliev.jsampler.juife.impl.DefaultPDUtilsImpl").newInstance();
-			} else if(s.toLowerCase().contains("dalvik")) {
-				impl = (PDUtilsImpl)Class.forName("com.grigoriliev.jsampler.juife.impl.AndroidPDUtilsImpl").newInstance();
-			} else {
-				impl = (PDUtilsImpl)Class.forName("com.grigoriliev.jsampler.juife.impl.DefaultPDUtilsImpl").newInstance();
+	/** The name of the system property used to choose the implementation. */
+	public static final String IMPL_PROPERTY = "juife.pdutils";
+	
+	/** The name of the system property used to enable batching initially. */
+	public static final String BATCHING_PROPERTY = "juife.pdutils.batching";
+	
+	/** The maximum number of batched runnables executed by a single UI event. */
+	private static final int MAX_BATCH_SIZE = 1024;
+	
+	private static final PDUtilsImpl impl = loadImpl();
+	
+	private static volatile boolean batching = Boolean.getBoolean(BATCHING_PROPERTY);
+	private static final ConcurrentLinkedQueue<Runnable> batch = new ConcurrentLinkedQueue<Runnable>();
+	private static final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+	
+	private static final Runnable drainTask = new Runnable() {
+		public void
+		run() { drainBatch(); }
+	};
+	
+	private static PDUtilsImpl
+	loadImpl() {
+		ArrayList<PDUtilsImpl> impls = new ArrayList<PDUtilsImpl>();
+		Iterator<PDUtilsImpl> it =
+			ServiceLoader.load(PDUtilsImpl.class, PDUtils.class.getClassLoader()).iterator();
+		
+		for(;;) {
+			try {
+				if(!it.hasNext()) break;
+				impls.add(it.next());
+			} catch(ServiceConfigurationError | LinkageError x) {
+				// providers which can't be loaded in this environment are skipped
 			}
-		} catch (Exception ex) {
-			ex.printStackTrace();
 		}
+		
+		String name = System.getProperty(IMPL_PROPERTY);
+		if(name != null) {
+			for(PDUtilsImpl i : impls) {
+				if(name.equals(i.getName()) || name.equals(i.getClass().getName())) return i;
+			}
+			
+			System.err.println("PDUtils: unknown implementation: " + name);
+		}
+		
+		PDUtilsImpl best = null;
+		for(PDUtilsImpl i : impls) {
+			if(!i.isAvailable()) continue;
+			if(best == null || i.getPriority() > best.getPriority()) best = i;
+		}
+		
+		return best != null ? best : new HeadlessPDUtilsImpl();
 	}
 	
+	/**
+	 * Gets the name of the implementation in use.
+	 * @see PDUtilsImpl#getName
+	 */
+	public static String
+	getImplName() { return impl.getName(); }
+	
 	/**
 	 * Causes <code>r.run()</code> to be executed asynchronously on the UI thread.
 	 * This call returns immediately.
 	 */
 	public static void
 	runOnUiThread(Runnable r) {
-		impl.runOnUiThread(r);
+		if(batching) addToBatch(r);
+		else impl.runOnUiThread(r);
 	}
 	
 	/**
 	 * Causes <code>r.run()</code> to be executed synchronously on the UI thread.
 	 * This call blocks until <code>r.run()</code> returns.
+	 * When batching is enabled, <code>r</code> is executed in order with the
+	 * other batched runnables and the calling thread is parked until it completes.
+	 * An exception thrown by <code>r.run()</code> is rethrown to the caller.
+	 * @throws InterruptedException If the calling thread is interrupted while
+	 * waiting. In this case <code>r</code> may still be executed later.
 	 */
 	public static void
 	runOnUiThreadAndWait(Runnable r) throws Exception {
-		impl.runOnUiThreadAndWait(r);
+		if(!batching) {
+			impl.runOnUiThreadAndWait(r);
+			return;
+		}
+		
+		if(impl.isUiThread()) {
+			r.run();
+			return;
+		}
+		
+		Latch l = new Latch(r);
+		addToBatch(l);
+		l.await();
+	}
+	
+	/**
+	 * Determines whether batching of the runnables posted to the UI thread is enabled.
+	 * Batching is disabled by default, unless the <code>juife.pdutils.batching</code>
+	 * system property is set to <code>true</code>.
+	 */
+	public static boolean
+	isBatchingEnabled() { return batching; }
+	
+	/**
+	 * Enables or disables batching of the runnables posted to the UI thread.
+	 * With batching enabled, the runnables posted by {@link #runOnUiThread} and
+	 * {@link #runOnUiThreadAndWait} are executed in the order they are posted,
+	 * as many as possible in a single UI event. The runnables batched before
+	 * disabling the batching are still executed, but not necessarily before
+	 * the ones posted afterwards.
+	 */
+	public static void
+	setBatchingEnabled(boolean b) { batching = b; }
+	
+	private static void
+	addToBatch(Runnable r) {
+		if(r == null) throw new NullPointerException();
+		batch.add(r);
+		if(drainScheduled.compareAndSet(false, true)) impl.runOnUiThread(drainTask);
+	}
+	
+	private static void
+	drainBatch() {
+		// reset first, so that a runnable added after the last poll posts a new event
+		drainScheduled.set(false);
+		
+		for(int i = 0; i < MAX_BATCH_SIZE; i++) {
+			Runnable r = batch.poll();
+			if(r == null) return;
+			
+			try { r.run(); }
+			catch(Throwable t) { t.printStackTrace(); }
+		}
+		
+		// let the UI process other events before continuing with the rest
+		if(!batch.isEmpty() && drainScheduled.compareAndSet(false, true)) {
+			impl.runOnUiThread(drainTask);
+		}
+	}
+	
+	/**
+	 * Runs a batched runnable on behalf of a thread parked in
+	 * {@link #runOnUiThreadAndWait} and unparks the thread when done.
+	 */
+	private static final class Latch implements Runnable {
+		private final Runnable r;
+		private final Thread waiter = Thread.currentThread();
+		private Throwable error = null;
+		private volatile boolean done = false;
+		
+		Latch(Runnable r) { this.r = r; }
+		
+		public void
+		run() {
+			try { r.run(); }
+			catch(Throwable t) { error = t; }
+			finally {
+				done = true;
+				LockSupport.unpark(waiter);
+			}
+		}
+		
+		void
+		await() throws Exception {
+			while(!done) {
+				LockSupport.park(this);
+				if(!done && Thread.interrupted()) throw new InterruptedException();
+			}
+			
+			if(error instanceof Exception) throw (Exception)error;
+			if(error instanceof Error) throw (Error)error;
+		}
+	}
+	
+	/**
+	 * Determines whether the current thread is the UI thread.
+	 */
+	public static boolean
+	isUiThread() {
+		return impl.isUiThread();
 	}
 }
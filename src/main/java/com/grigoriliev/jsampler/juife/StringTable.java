@@ -0,0 +1,194 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+
+package com.grigoriliev.jsampler.juife;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.TreeMap;
+
+
+/**
+ * An immutable resource bundle of strings, stored as two parallel arrays of sorted
+ * keys and values. A string table is normally produced at build time from a bundle of
+ * <code>.properties</code> files by {@link StringTableCompiler}, which flattens the
+ * locale fallback chain, so that a table contains all strings of its locale and
+ * loading it requires neither parsing nor parent lookups.
+ * <p>
+ * The compiled tables are stored as resources named after the base name of the
+ * bundle and the locale, with <code>.strtab</code> extension, for example
+ * <code>com/grigoriliev/jsampler/juife/langprops/LabelsBundle_de.strtab</code>.
+ * </p>
+ * @see I18n#getBundle
+ * @author Grigor Iliev
+ */
+public final class StringTable extends ResourceBundle {
+	/** The extension of the compiled string table resources. */
+	public static final String EXTENSION = ".strtab";
+	
+	private static final int MAGIC = 0x4A535442; // JSTB
+	private static final int VERSION = 1;
+	
+	private final String[] keys;
+	private final String[] values;
+	
+	private
+	StringTable(String[] keys, String[] values) {
+		this.keys = keys;
+		this.values = values;
+	}
+	
+	/**
+	 * Creates a string table containing the specified strings.
+	 * @param strings The keys and the values of the strings.
+	 * @return A string table containing the specified strings.
+	 */
+	public static StringTable
+	create(Map<String, String> strings) {
+		TreeMap<String, String> m = new TreeMap<String, String>(strings);
+		return new StringTable (
+			m.keySet().toArray(new String[0]), m.values().toArray(new String[0])
+		);
+	}
+	
+	/**
+	 * Gets the number of strings in this table.
+	 * @return The number of strings in this table.
+	 */
+	public int
+	size() { return keys.length; }
+	
+	/**
+	 * Gets the string with the specified key.
+	 * @param key The key of the desired string.
+	 * @return The string with the specified key or
+	 * <code>null</code> if there is no such string in the table.
+	 */
+	public String
+	get(String key) {
+		int i = Arrays.binarySearch(keys, key);
+		return i < 0 ? null : values[i];
+	}
+	
+	protected Object
+	handleGetObject(String key) {
+		if(key == null) throw new NullPointerException("key should be non-null");
+		return get(key);
+	}
+	
+	public Enumeration<String>
+	getKeys() { return Collections.enumeration(Arrays.asList(keys)); }
+	
+	/**
+	 * Writes this table in the compiled format.
+	 * @param out The stream to write to. The stream is not closed.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public void
+	write(OutputStream out) throws IOException {
+		DataOutputStream dos = new DataOutputStream(out);
+		dos.writeInt(MAGIC);
+		dos.writeShort(VERSION);
+		dos.writeInt(keys.length);
+		for(int i = 0; i < keys.length; i++) {
+			dos.writeUTF(keys[i]);
+			dos.writeUTF(values[i]);
+		}
+		dos.flush();
+	}
+	
+	/**
+	 * Reads a table in the compiled format. The keys and the values are interned,
+	 * so the strings shared by several tables are stored only once.
+	 * @param in The stream to read from. The stream is not closed.
+	 * @return The string table read from the specified stream.
+	 * @throws IOException If an I/O error occurs or the stream is not a compiled string table.
+	 */
+	public static StringTable
+	read(InputStream in) throws IOException {
+		DataInputStream dis = new DataInputStream(new BufferedInputStream(in));
+		if(dis.readInt() != MAGIC) throw new IOException("Not a string table");
+		int v = dis.readShort();
+		if(v != VERSION) throw new IOException("Unsupported string table version: " + v);
+		
+		int n = dis.readInt();
+		String[] keys = new String[n];
+		String[] values = new String[n];
+		for(int i = 0; i < n; i++) {
+			keys[i] = dis.readUTF().intern();
+			values[i] = dis.readUTF().intern();
+		}
+		return new StringTable(keys, values);
+	}
+	
+	/**
+	 * Gets the name of the resource containing the compiled table
+	 * for the specified base name and locale.
+	 * @param baseName The base name of the bundle (a fully qualified class name).
+	 * @param locale The locale of the table or <code>Locale.ROOT</code> for the base table.
+	 * @return The resource name, without a leading slash.
+	 */
+	public static String
+	getResourceName(String baseName, Locale locale) {
+		String s = locale.toString();
+		if(!s.isEmpty()) s = "_" + s;
+		return baseName.replace('.', '/') + s + EXTENSION;
+	}
+	
+	/**
+	 * Loads the compiled table for the specified base name and locale. If there is
+	 * no table for the locale, the tables for its parent locales are tried in the
+	 * order in which the resource bundles are looked up, ending with the base table.
+	 * The tables are looked up in the module of the specified class. If it is a named
+	 * module, the package of the tables should be open to this module.
+	 * @param c The class whose module should be used to find the resources.
+	 * @param baseName The base name of the bundle (a fully qualified class name).
+	 * @param locale The desired locale.
+	 * @return The loaded table or <code>null</code> if there is no compiled table.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public static StringTable
+	load(Class<?> c, String baseName, Locale locale) throws IOException {
+		ResourceBundle.Control ctrl =
+			ResourceBundle.Control.getNoFallbackControl(ResourceBundle.Control.FORMAT_DEFAULT);
+		
+		Module m = c.getModule();
+		for(Locale l : ctrl.getCandidateLocales(baseName, locale)) {
+			InputStream in = m.getResourceAsStream(getResourceName(baseName, l));
+			if(in == null) continue;
+			try { return read(in); }
+			finally { in.close(); }
+		}
+		return null;
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+
+package com.grigoriliev.jsampler.juife;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PropertyResourceBundle;
+import java.util.ResourceBundle;
+
+
+/**
+ * Compiles bundles of <code>.properties</code> files into {@link StringTable string tables}.
+ * For each locale, for which there is a <code>.properties</code> file, a table
+ * containing all strings of that locale, including the ones inherited from the
+ * parent locales, is written. The compiler is invoked at build time with
+ * <code>mvn -P string-tables</code>, or from the command line:
+ * <pre>
+ * java com.grigoriliev.jsampler.juife.StringTableCompiler &lt;source dir&gt; &lt;output dir&gt; &lt;base name&gt;...
+ * </pre>
+ * where the source directory is the root of the <code>.properties</code> files,
+ * the output directory is the root of the resources of the application and the
+ * base names are the fully qualified names of the bundles.
+ * @author Grigor Iliev
+ */
+public class StringTableCompiler {
+	private final File sourceDir;
+	private final File outputDir;
+	
+	/**
+	 * Creates a new compiler.
+	 * @param sourceDir The root directory of the <code>.properties</code> files.
+	 * @param outputDir The root directory to which the compiled tables should be written.
+	 */
+	public
+	StringTableCompiler(File sourceDir, File outputDir) {
+		this.sourceDir = sourceDir;
+		this.outputDir = outputDir;
+	}
+	
+	/**
+	 * Compiles all locales of the specified bundle.
+	 * @param baseName The base name of the bundle (a fully qualified class name).
+	 * @return The number of compiled tables.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public int
+	compile(String baseName) throws IOException {
+		String path = baseName.replace('.', '/');
+		File dir = new File(sourceDir, path).getParentFile();
+		String prefix = path.substring(path.lastIndexOf('/') + 1);
+		
+		HashMap<Locale, Map<String, String>> locales = new HashMap<Locale, Map<String, String>>();
+		File[] files = dir.listFiles();
+		if(files != null) {
+			for(File f : files) {
+				Locale l = getLocale(f.getName(), prefix);
+				if(l != null) locales.put(l, readProperties(f));
+			}
+		}
+		
+		ResourceBundle.Control ctrl =
+			ResourceBundle.Control.getNoFallbackControl(ResourceBundle.Control.FORMAT_DEFAULT);
+		
+		for(Locale l : locales.keySet()) {
+			// the candidates are ordered from the most specific locale to the root
+			List<Locale> candidates = ctrl.getCandidateLocales(baseName, l);
+			HashMap<String, String> strings = new HashMap<String, String>();
+			for(int i = candidates.size() - 1; i >= 0; i--) {
+				Map<String, String> m = locales.get(candidates.get(i));
+				if(m != null) strings.putAll(m);
+			}
+			
+			File out = new File(outputDir, StringTable.getResourceName(baseName, l));
+			out.getParentFile().mkdirs();
+			OutputStream os = new FileOutputStream(out);
+			try { StringTable.create(strings).write(os); }
+			finally { os.close(); }
+		}
+		
+		return locales.size();
+	}
+	
+	/**
+	 * Gets the locale of the specified <code>.properties</code> file.
+	 * @return The locale of the file or <code>null</code> if the
+	 * file doesn't belong to the bundle with the specified prefix.
+	 */
+	private static Locale
+	getLocale(String fileName, String prefix) {
+		if(!fileName.startsWith(prefix) || !fileName.endsWith(".properties")) return null;
+		
+		String s = fileName.substring(prefix.length(), fileName.length() - ".properties".length());
+		if(s.isEmpty()) return Locale.ROOT;
+		if(s.charAt(0) != '_') return null;
+		
+		String[] parts = s.substring(1).split("_", 3);
+		return new Locale(parts[0], parts.length > 1 ? parts[1] : "", parts.length > 2 ? parts[2] : "");
+	}
+	
+	private static Map<String, String>
+	readProperties(File f) throws IOException {
+		InputStream in = new FileInputStream(f);
+		try {
+			PropertyResourceBundle rb = new PropertyResourceBundle(in);
+			HashMap<String, String> m = new HashMap<String, String>();
+			for(String key : Collections.list(rb.getKeys())) m.put(key, rb.getString(key));
+			return m;
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Compiles the specified bundles.
+	 * @param args The source directory, the output directory and the base names of the bundles.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public static void
+	main(String[] args) throws IOException {
+		if(args.length < 3) {
+			System.err.println (
+				"Usage: StringTableCompiler <source dir> <output dir> <base name>..."
+			);
+			System.exit(1);
+		}
+		
+		StringTableCompiler c = new StringTableCompiler(new File(args[0]), new File(args[1]));
+		for(int i = 2; i < args.length; i++) {
+			int n = c.compile(args[i]);
+			System.out.println(args[i] + ": " + n + " string table(s) compiled");
+		}
+	}
+}
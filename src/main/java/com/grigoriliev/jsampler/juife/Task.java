@@ -128,4 +128,45 @@ public interface Task<R> {
 	
 	/** Terminates the execution of this task */
 	void stop();
+	
+	/**
+	 * Gets the priority of this task. The priority is used by the task queues
+	 * in {@link TaskQueue.Order#PRIORITY priority order} to determine which task should
+	 * be executed first. Higher values indicate higher priority.
+	 * The default implementation returns <code>0</code>.
+	 * @return The priority of this task.
+	 */
+	default int
+	getPriority() { return 0; }
+	
+	/**
+	 * Gets the key used to identify equivalent tasks. When coalescing is enabled in a
+	 * task queue, a task is not queued if a task with an equal key is already pending.
+	 * The default implementation returns <code>null</code>.
+	 * @return The coalescing key of this task or <code>null</code>
+	 * if this task should never be coalesced.
+	 * @see TaskQueue#setCoalescing
+	 */
+	default Object
+	getCoalescingKey() { return null; }
+	
+	/**
+	 * Gets the maximum time this task is allowed to run when executed in a task queue.
+	 * The default implementation returns <code>0</code>.
+	 * @return The timeout in milliseconds or <code>0</code>
+	 * if the default timeout of the queue should be used.
+	 * @see TaskQueue#setTaskTimeout
+	 */
+	default long
+	getTimeout() { return 0; }
+	
+	/**
+	 * Gets the time by which this task should be done. The deadline is used by
+	 * the task queues in {@link TaskQueue.Order#DEADLINE deadline order} to determine
+	 * which task should be executed first. The default implementation returns <code>0</code>.
+	 * @return The deadline in milliseconds since the epoch (as returned by
+	 * <code>System.currentTimeMillis()</code>) or <code>0</code> if there is no deadline.
+	 */
+	default long
+	getDeadline() { return 0; }
 }
@@ -0,0 +1,87 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+
+package com.grigoriliev.jsampler.juife;
+
+
+/**
+ * Thrown to indicate that a task has finished its execution with errors.
+ * @see TaskFutures
+ * @author Grigor Iliev
+ */
+public class TaskException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+	
+	/** Not serialized, since the tasks are not serializable. */
+	private final transient Task<?> task;
+	private final int errorCode;
+	private final String errorDetails;
+	
+	/**
+	 * Creates a new instance of <code>TaskException</code>
+	 * describing the failure of the specified task.
+	 * @param task The task that has failed.
+	 */
+	public
+	TaskException(Task<?> task) { this(task, null); }
+	
+	/**
+	 * Creates a new instance of <code>TaskException</code> describing
+	 * the failure of the specified task due to the specified exception.
+	 * @param task The task that has failed.
+	 * @param cause The exception thrown during the execution of the task or
+	 * <code>null</code> if the task has finished with errors without throwing.
+	 */
+	public
+	TaskException(Task<?> task, Throwable cause) {
+		super(task.getErrorMessage(), cause);
+		this.task = task;
+		errorCode = task.getErrorCode();
+		errorDetails = task.getErrorDetails();
+	}
+	
+	/**
+	 * Gets the task that has failed. The error code, message and details
+	 * of the task are kept by the exception itself and survive serialization.
+	 * @return The task that has failed or <code>null</code>
+	 * if this exception has been deserialized.
+	 */
+	public Task<?>
+	getTask() { return task; }
+	
+	/**
+	 * Gets the error code identifying the failure of the task.
+	 * @return The error code identifying the failure of the task.
+	 * @see Task#getErrorCode
+	 */
+	public int
+	getErrorCode() { return errorCode; }
+	
+	/**
+	 * Gets a detailed error information.
+	 * @return A detailed error information.
+	 * @see Task#getErrorDetails
+	 */
+	public String
+	getErrorDetails() { return errorDetails; }
+}
@@ -0,0 +1,219 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+package com.grigoriliev.jsampler.juife;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Provides the executors used to run tasks asynchronously by
+ * {@link AbstractTask#invoke}, {@link TaskList#process} and {@link TaskQueue#start}.
+ * Unless an executor is explicitly set on a particular task, task list or
+ * task queue, the default executor is used, which starts a new platform
+ * thread for each execution.
+ * @author Grigor Iliev
+ */
+public final class TaskExecutors {
+	/** Starts a new platform thread for each command. */
+	private static final Executor THREAD_PER_TASK = new Executor() {
+		public void
+		execute(Runnable r) { new Thread(r).start(); }
+	};
+	
+	private static volatile Executor defaultExecutor = THREAD_PER_TASK;
+	
+	private
+	TaskExecutors() { }
+	
+	/**
+	 * Gets an executor that starts a new platform thread for each command.
+	 * This is the initial default executor.
+	 * @return An executor that starts a new platform thread for each command.
+	 */
+	public static Executor
+	threadPerTask() { return THREAD_PER_TASK; }
+	
+	/**
+	 * Gets a shared executor backed by a pool of reusable daemon threads.
+	 * Idle threads are kept alive for a minute before being terminated.
+	 * @return A shared executor backed by a pool of platform threads.
+	 */
+	public static Executor
+	sharedPool() { return SharedPool.EXECUTOR; }
+	
+	/**
+	 * Gets a shared executor that starts a new virtual thread for each command.
+	 * On runtimes that don't support virtual threads the executor returned by
+	 * {@link #sharedPool} is used instead.
+	 * @return An executor that runs each command in a virtual thread if supported.
+	 * @see #isVirtualThreadSupported
+	 */
+	public static Executor
+	virtualThreads() {
+		Executor e = VirtualThreads.EXECUTOR;
+		return e != null ? e : sharedPool();
+	}
+	
+	/**
+	 * Determines whether the current runtime supports virtual threads.
+	 * @return <code>true</code> if virtual threads are supported,
+	 * <code>false</code> otherwise.
+	 */
+	public static boolean
+	isVirtualThreadSupported() { return VirtualThreads.EXECUTOR != null; }
+	
+	/**
+	 * Gets the executor used when no executor is set explicitly.
+	 * @return The default executor.
+	 */
+	public static Executor
+	getDefaultExecutor() { return defaultExecutor; }
+	
+	/**
+	 * Sets the executor to be used when no executor is set explicitly.
+	 * @param executor The new default executor or <code>null</code>
+	 * to restore the initial one, which starts a new platform thread for each command.
+	 */
+	public static void
+	setDefaultExecutor(Executor executor) {
+		defaultExecutor = executor == null ? THREAD_PER_TASK : executor;
+	}
+	
+	/**
+	 * Executes the specified command using the specified executor in a thread
+	 * named <code>name</code>. If the command is executed by a thread which
+	 * is not created specifically for it, the original thread name is
+	 * restored when the command finishes.
+	 */
+	static void
+	execute(Executor executor, final String name, final Runnable r) {
+		if(executor == null) executor = defaultExecutor;
+		
+		if(executor == THREAD_PER_TASK) {
+			new Thread(r, name).start();
+			return;
+		}
+		
+		executor.execute(new Runnable() {
+			public void
+			run() {
+				Thread t = Thread.currentThread();
+				String oldName = t.getName();
+				t.setName(name);
+				try { r.run(); }
+				finally { t.setName(oldName); }
+			}
+		});
+	}
+	
+	/**
+	 * Gets the shared timer used for the time-based operations of
+	 * the task framework. The timer uses a single daemon thread, so
+	 * the scheduled commands should return quickly.
+	 */
+	static ScheduledExecutorService
+	timer() { return SharedTimer.EXECUTOR; }
+	
+	/**
+	 * Gets the shared single-threaded executor used to deliver events
+	 * with {@link DeliveryPolicy#EVENT_EXECUTOR} policy.
+	 */
+	static ExecutorService
+	eventExecutor() { return EventThread.EXECUTOR; }
+	
+	private static class EventThread {
+		static final ExecutorService EXECUTOR;
+		
+		static {
+			EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread
+				newThread(Runnable r) {
+					Thread t = new Thread(r, "juife-events");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+	}
+	
+	private static class SharedTimer {
+		static final ScheduledThreadPoolExecutor EXECUTOR;
+		
+		static {
+			EXECUTOR = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+				public Thread
+				newThread(Runnable r) {
+					Thread t = new Thread(r, "juife-timer");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			EXECUTOR.setRemoveOnCancelPolicy(true);
+		}
+	}
+	
+	private static class SharedPool {
+		static final ExecutorService EXECUTOR;
+		
+		static {
+			ThreadFactory f = new ThreadFactory() {
+				private final AtomicInteger serial = new AtomicInteger();
+				
+				public Thread
+				newThread(Runnable r) {
+					Thread t = new Thread(r, "juife-pool-" + serial.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			};
+			
+			EXECUTOR = new ThreadPoolExecutor (
+				0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), f
+			);
+		}
+	}
+	
+	private static class VirtualThreads {
+		static final ExecutorService EXECUTOR;
+		
+		static {
+			ExecutorService e = null;
+			try {
+				// available since Java 21
+				e = (ExecutorService)Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch(Exception x) { }
+			EXECUTOR = e;
+		}
+	}
+}
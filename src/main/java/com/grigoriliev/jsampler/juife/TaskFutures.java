@@ -0,0 +1,92 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+
+package com.grigoriliev.jsampler.juife;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+import com.grigoriliev.jsampler.juife.event.TaskEvent;
+import com.grigoriliev.jsampler.juife.event.TaskListener;
+
+
+/**
+ * Provides <code>CompletableFuture</code> views of tasks, which allow
+ * dependent operations to be composed without blocking a thread.
+ * @see TaskQueue#submit
+ * @author Grigor Iliev
+ */
+public final class TaskFutures {
+	private
+	TaskFutures() { }
+	
+	/**
+	 * Gets a future that is completed when the specified task is done.
+	 * The future is completed with the {@link Task#getResult result} of the task or,
+	 * if the task has finished its execution with errors, exceptionally with
+	 * a {@link TaskException}, whose cause is the exception thrown by the task,
+	 * if any. For instances of <code>AbstractTask</code> the
+	 * future is completed on the thread that executed the task, otherwise
+	 * it is completed on the UI thread. This method does not start the task.
+	 * Cancelling the returned future {@link Task#stop stops} the task.
+	 * @param task The task whose completion should be observed.
+	 * @return A future that is completed when the specified task is done.
+	 */
+	public static <R> CompletableFuture<R>
+	toCompletableFuture(final Task<R> task) {
+		final CompletableFuture<R> future = new CompletableFuture<R>();
+		
+		TaskListener l = new TaskListener() {
+			public void
+			taskPerformed(TaskEvent e) { complete(task, future); }
+		};
+		
+		if(task instanceof AbstractTask) {
+			((AbstractTask<R>)task).addTaskListener(l, DeliveryPolicy.SAME_THREAD);
+		} else {
+			task.addTaskListener(l);
+		}
+		
+		// the task may have finished before the listener was registered
+		if(task.done()) complete(task, future);
+		
+		future.whenComplete(new BiConsumer<R, Throwable>() {
+			public void
+			accept(R result, Throwable t) { if(future.isCancelled()) task.stop(); }
+		});
+		
+		return future;
+	}
+	
+	private static <R> void
+	complete(Task<R> task, CompletableFuture<R> future) {
+		if(!task.doneWithErrors()) {
+			future.complete(task.getResult());
+			return;
+		}
+		
+		Throwable cause = null;
+		if(task instanceof AbstractTask) cause = ((AbstractTask<R>)task).getFailure();
+		future.completeExceptionally(new TaskException(task, cause));
+	}
+}
@@ -22,8 +22,12 @@
 
 package com.grigoriliev.jsampler.juife;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.Vector;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.grigoriliev.jsampler.juife.event.GenericListener;
 import com.grigoriliev.jsampler.juife.event.GenericEvent;
@@ -31,14 +35,47 @@ import com.grigoriliev.jsampler.juife.event.GenericEvent;
 
 /**
  * This class represents a list of tasks held for further processing.
+ * <p>
+ * By default the tasks are executed sequentially in the order they are added.
+ * With {@link #setMaxConcurrency max concurrency} greater than one, the tasks
+ * are executed in parallel by several threads. The tasks can also declare
+ * dependencies on other tasks in the list, in which case a task is started
+ * only after all tasks it depends on are done.
+ * </p>
  * @author  Grigor Iliev
  */
 public class TaskList {
 	private final String name;
 	private final Vector<Task> taskList = new Vector<Task>();
+	private Executor executor = null;
+	private int maxConcurrency = 1;
+	
+	/** Holds a task along with its dependency information. */
+	private static class Node {
+		final Task task;
+		final ArrayList<Node> dependents = new ArrayList<Node>();
+		final AtomicInteger unmetDependencies = new AtomicInteger();
+		int dependencyCount = 0;
+		
+		Node(Task task) { this.task = task; }
+	}
+	
+	private final ArrayList<Node> nodes = new ArrayList<Node>();
+	private final IdentityHashMap<Task, Node> nodeMap = new IdentityHashMap<Task, Node>();
+	
+	/**
+	 * The nodes whose dependencies are done and which wait for a free thread
+	 * in parallel mode. Also guards <code>runningThreads</code>.
+	 */
+	private final ArrayDeque<Node> readyNodes = new ArrayDeque<Node>();
+	private int runningThreads = 0;
+	private final AtomicInteger remainingNodes = new AtomicInteger();
+	private final AtomicInteger threadSerial = new AtomicInteger();
 	
 	private boolean started = false;
-	private boolean processed = false;
+	private boolean managed = false;
+	private volatile boolean processed = false;
+	private volatile boolean cancelled = false;
 	
 	/**
 	 * Creates a new instance of <code>TaskList</code>.
@@ -73,6 +110,20 @@ public class TaskList {
 		for(Task t : tasks) add(t);
 	}
 	
+	/**
+	 * Gets the name of this task list.
+	 * @return The name of this task list.
+	 */
+	public String
+	getName() { return name; }
+	
+	/**
+	 * Gets the tasks in this list in the order they were added.
+	 * @return An array containing all tasks in this list.
+	 */
+	public Task[]
+	getTasks() { return taskList.toArray(new Task[0]); }
+	
 	/**
 	 * Adds the specified task to this task list.
 	 * @param task The task to be added.
@@ -80,27 +131,236 @@ public class TaskList {
 	 * of the tasks in the list is already started.
 	 */
 	public void
-	add(Task task) {
+	add(Task task) { add(task, (Task[])null); }
+	
+	/**
+	 * Adds the specified task to this task list. The task will be started
+	 * only after all of the specified tasks are done. Note that the
+	 * task is started even if some of its dependencies fail.
+	 * @param task The task to be added.
+	 * @param dependencies The tasks that should be done before
+	 * the specified task is started. They should be already added to this list.
+	 * @throws IllegalStateException If the processing
+	 * of the tasks in the list is already started.
+	 * @throws IllegalArgumentException If any of the dependencies is not in this list.
+	 */
+	public synchronized void
+	add(Task task, Task... dependencies) {
 		if(isStarted())
 			throw new IllegalStateException("The TaskList is already started");
+		
+		Node node = new Node(task);
+		if(dependencies != null) {
+			for(Task t : dependencies) {
+				Node n = nodeMap.get(t);
+				if(n == null) {
+					throw new IllegalArgumentException (
+						"The dependency is not in the list: " + t.getTitle()
+					);
+				}
+				n.dependents.add(node);
+				node.dependencyCount++;
+			}
+		}
+		
+		nodes.add(node);
+		nodeMap.put(task, node);
 		taskList.add(task);
 	}
 	
-	/** Starts the processing of the tasks in this list. */
+	/**
+	 * Gets the maximum number of tasks executed simultaneously.
+	 * @return The maximum number of tasks executed simultaneously.
+	 * @see #setMaxConcurrency
+	 */
+	public synchronized int
+	getMaxConcurrency() { return maxConcurrency; }
+	
+	/**
+	 * Sets the maximum number of tasks executed simultaneously.
+	 * The default value is <code>1</code>, which means that the tasks are
+	 * executed sequentially by a single thread obtained from the
+	 * {@link #setExecutor executor} of this list. Otherwise the tasks are
+	 * executed by up to <code>n</code> threads obtained from the executor.
+	 * @param n The maximum number of tasks executed simultaneously.
+	 * Specify <code>0</code> to use as many threads as there are available processors.
+	 * @throws IllegalArgumentException If <code>n</code> is negative.
+	 * @throws IllegalStateException If the processing is already started.
+	 */
+	public synchronized void
+	setMaxConcurrency(int n) {
+		if(n < 0) throw new IllegalArgumentException("Negative concurrency: " + n);
+		if(isStarted())
+			throw new IllegalStateException("The TaskList is already started");
+		
+		maxConcurrency = n == 0 ? Runtime.getRuntime().availableProcessors() : n;
+	}
+	
+	/**
+	 * Gets the executor used to process the tasks in this list.
+	 * @return The executor of this task list or <code>null</code>
+	 * if the default executor is used.
+	 * @see TaskExecutors#getDefaultExecutor
+	 */
+	public Executor
+	getExecutor() { return executor; }
+	
+	/**
+	 * Sets the executor used to process the tasks in this list.
+	 * @param executor The executor to use or <code>null</code> to use the default one.
+	 * @see TaskExecutors
+	 */
 	public void
+	setExecutor(Executor executor) { this.executor = executor; }
+	
+	/**
+	 * Determines whether an MXBean of this list is registered
+	 * in the platform MBean server while the tasks are processed.
+	 * @return <code>true</code> if this list is managed, <code>false</code> otherwise.
+	 * @see #setManaged
+	 */
+	public synchronized boolean
+	isManaged() { return managed; }
+	
+	/**
+	 * Specifies whether an MXBean of this list should be registered in the platform
+	 * MBean server while the tasks are processed. The MXBean is registered when
+	 * the processing is started and is unregistered when all tasks are done.
+	 * The MXBean is not registered if the <code>java.management</code>
+	 * module is not present.
+	 * @param b Specifies whether this list should be managed.
+	 * @see com.grigoriliev.jsampler.juife.management.TaskListMXBean
+	 */
+	public synchronized void
+	setManaged(boolean b) {
+		if(b == managed) return;
+		managed = b;
+		
+		if(!b) Management.unregister(this);
+		else if(isStarted() && !isProcessed()) Management.register(this);
+	}
+	
+	/** Starts the processing of the tasks in this list. */
+	public synchronized void
 	process() {
 		if(started) throw new IllegalStateException("Already started");
 		started = true;
-		new Thread(name) {
+		if(managed) Management.register(this);
+		
+		// the dependencies are always added before their dependents,
+		// so the sequential processing satisfies them
+		if(maxConcurrency > 1 && taskList.size() > 1) {
+			processInParallel();
+			return;
+		}
+		
+		TaskExecutors.execute(getExecutor(), name, new Runnable() {
 			public void
 			run() {
-				for(Task t : taskList) { t.invokeAndWait();  }
+				for(Task t : taskList) invokeTask(t);
 				fireActionPerformed();
-				processed = true;
+				setProcessed();
+			}
+		});
+	}
+	
+	/**
+	 * Executes the specified task. An exception thrown by the task is reported
+	 * and does not prevent the processing of the rest of the list.
+	 */
+	private static void
+	invokeTask(Task t) {
+		try { t.invokeAndWait(); }
+		catch(Throwable x) { x.printStackTrace(); }
+	}
+	
+	private void
+	processInParallel() {
+		remainingNodes.set(nodes.size());
+		
+		synchronized(readyNodes) {
+			for(Node n : nodes) {
+				n.unmetDependencies.set(n.dependencyCount);
+				if(n.dependencyCount == 0) readyNodes.add(n);
+			}
+		}
+		startThreads();
+	}
+	
+	/** Starts threads for the ready nodes, as long as the concurrency limit allows it. */
+	private void
+	startThreads() {
+		for(;;) {
+			final Node n;
+			synchronized(readyNodes) {
+				if(runningThreads >= maxConcurrency || readyNodes.isEmpty()) return;
+				n = readyNodes.poll();
+				runningThreads++;
 			}
-		}.start();
+			
+			String s = name + "-" + threadSerial.incrementAndGet();
+			TaskExecutors.execute(getExecutor(), s, new Runnable() {
+				public void
+				run() { runNodes(n); }
+			});
+		}
 	}
 	
+	/**
+	 * Executes the specified node and then the ready nodes, one after another,
+	 * until there are no ready nodes.
+	 */
+	private void
+	runNodes(Node node) {
+		while(node != null) {
+			invokeTask(node.task);
+			
+			Node next;
+			synchronized(readyNodes) {
+				for(Node n : node.dependents) {
+					if(n.unmetDependencies.decrementAndGet() == 0) readyNodes.add(n);
+				}
+				next = readyNodes.poll();
+				if(next == null) runningThreads--;
+			}
+			
+			if(remainingNodes.decrementAndGet() == 0) {
+				fireActionPerformed();
+				setProcessed();
+				return;
+			}
+			
+			// let other threads help with the rest of the ready nodes
+			startThreads();
+			node = next;
+		}
+	}
+	
+	private synchronized void
+	setProcessed() {
+		processed = true;
+		if(managed) Management.unregister(this);
+	}
+	
+	/**
+	 * Cancels the processing of the tasks in this list. All tasks in the list are
+	 * {@link Task#stop stopped}, so the running tasks are interrupted and the instances
+	 * of <code>AbstractTask</code> that are not started yet finish without being executed.
+	 * The listeners are notified as usual when all tasks are done.
+	 */
+	public void
+	cancel() {
+		cancelled = true;
+		for(Task t : taskList.toArray(new Task[0])) t.stop();
+	}
+	
+	/**
+	 * Determines whether the processing of the tasks in the list has been cancelled.
+	 * @return <code>true</code> if the processing has been cancelled, <code>false</code> otherwise.
+	 */
+	public boolean
+	isCancelled() { return cancelled; }
+	
 	/**
 	 * Determines whether the processing of the tasks in the list has been started.
 	 * @return <code>true</code> if the processing of the tasks in
@@ -122,7 +382,11 @@ public class TaskList {
 	private static synchronized int
 	getSerialNumber() { return ++serial; }
 	
-	/** A list of event listeners for this <code>TaskList</code>. */
+	/**
+	 * A list of event listeners for this <code>TaskList</code>.
+	 * Any access should be synchronized on the list, since the events
+	 * are fired from the threads executing the tasks.
+	 */
 	protected final ArrayList<GenericListener> listenerList = new ArrayList<GenericListener>();
 	
 	/**
@@ -131,35 +395,46 @@ public class TaskList {
 	 * @param l The <code>GenericListener</code> to register.
 	 */
 	public void
-	addListener(GenericListener l) { listenerList.add(l); }
+	addListener(GenericListener l) {
+		synchronized(listenerList) { listenerList.add(l); }
+	}
 	
 	/**
 	 * Removes the specified listener.
 	 * @param l The <code>GenericListener</code> to remove.
 	 */
 	public void
-	removeActionListener(GenericListener l) { listenerList.remove(l); }
+	removeActionListener(GenericListener l) {
+		synchronized(listenerList) { listenerList.remove(l); }
+	}
 	
 	/** Notifies registered listeners that the history list has changed. */
 	private void
 	fireActionPerformed() {
+		final GenericListener[] listeners;
+		synchronized(listenerList) {
+			if(listenerList.isEmpty()) return;
+			listeners = listenerList.toArray(new GenericListener[listenerList.size()]);
+		}
+		
 		try {
 			PDUtils.runOnUiThreadAndWait(new Runnable() {
 				public void
-				run() { fireActionPerformed0(); }
+				run() { fireActionPerformed0(listeners); }
 			});
 		} catch(Exception x) { x.printStackTrace(); }
 	}
 	
 	/**
-	 * Notifies registered listeners that the history list has changed.
+	 * Notifies the specified listeners that the history list has changed.
 	 * This method should be invoked from the event-dispatching thread.
+	 * @param listeners A snapshot of the registered listeners.
 	 */
 	private void
-	fireActionPerformed0() {
+	fireActionPerformed0(GenericListener[] listeners) {
 		GenericEvent e = new GenericEvent(this);
-		for(int i = listenerList.size() - 1; i >= 0; i--) {
-			listenerList.get(i).jobDone(e);
+		for(int i = listeners.length - 1; i >= 0; i--) {
+			listeners[i].jobDone(e);
 		}
 	}
 }
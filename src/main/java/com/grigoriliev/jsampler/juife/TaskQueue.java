@@ -22,8 +22,30 @@
 
 package com.grigoriliev.jsampler.juife;
 
-import java.util.LinkedList;
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
 import com.grigoriliev.jsampler.juife.event.TaskQueueEvent;
 import com.grigoriliev.jsampler.juife.event.TaskQueueListener;
@@ -33,18 +55,223 @@ import com.grigoriliev.jsampler.juife.event.TaskQueueListener;
  * The <code>TaskQueue</code> class represents a queue that holds tasks
  * which are executed in FIFO order.
  * Note that the tasks are removed from the queue before their execution.
+ * <p>
+ * The queue can also be switched to priority order with {@link #setOrder},
+ * in which case the task with the highest {@link Task#getPriority priority}
+ * is executed first and the tasks with equal priority are executed in FIFO order.
+ * To prevent starvation of the low priority tasks an
+ * {@link #setAgingInterval aging interval} can be specified.
+ * </p><p>
+ * When {@link #setCoalescing coalescing} is enabled, a task with a non-null
+ * {@link Task#getCoalescingKey coalescing key} is not queued if a task with
+ * an equal key is already pending. Instead, depending on the coalescing mode,
+ * either the new task is discarded or it takes the place of the pending one.
+ * </p><p>
+ * With {@link #setBatchSize batch size} greater than one each worker fetches
+ * several tasks at once, which reduces the per-task overhead of the queue.
+ * The {@link BatchTask batch tasks} with equal batch keys fetched together
+ * are executed as a single operation.
+ * </p><p>
+ * A task that runs longer than its {@link Task#getTimeout timeout} or the
+ * {@link #setTaskTimeout timeout of the queue} is stopped and a
+ * <code>TIMED_OUT</code> event is fired. Its worker is replaced by a new one,
+ * so a hung task does not block the rest of the queue.
+ * The queue can also be switched to {@link Order#DEADLINE earliest deadline first} order.
+ * </p><p>
+ * Tasks can be added with a {@link #schedule delay} or periodically, at a
+ * {@link #scheduleAtFixedRate fixed rate} or with a {@link #scheduleWithFixedDelay fixed delay}.
+ * All schedules share a single timer thread, which only triggers the additions.
+ * The schedules of a queue are cancelled when the queue is stopped.
+ * </p><p>
+ * The queue can be {@link #setCapacity bounded}, in which case an
+ * {@link OverflowPolicy overflow policy} determines whether adding a task to
+ * a full queue blocks the producer, throws an exception, or drops a task.
+ * The {@link #setWatermarks watermark events} allow the producers to slow
+ * down before the queue is full.
+ * </p><p>
+ * Statistics about the queue wait time, the execution time and the throughput
+ * can be collected by {@link #setMetricsEnabled enabling the metrics} of the queue.
+ * A {@link #setManaged managed} queue can be monitored and controlled through JMX.
+ * </p><p>
+ * The listeners registered as coalescing receive the events collapsed into a
+ * single UI thread call per {@link #setEventCoalescingInterval interval},
+ * which keeps the UI responsive when the queue processes many tasks per second.
+ * </p><p>
+ * By default the tasks are executed one at a time by a single worker thread.
+ * The queue can be switched to parallel mode with {@link #setWorkerCount},
+ * in which case up to that number of tasks are executed simultaneously
+ * and are fetched from the queue in FIFO order.
+ * </p><p>
+ * Adding tasks to the queue is lock-free - the producers never block each other
+ * or the workers, except for the rare moments when the queue changes its
+ * empty or idle state and the corresponding event has to be fired.
+ * </p>
  * @author Grigor Iliev
  */
 public class TaskQueue {
+	/** Specifies the order in which the tasks are fetched from the queue. */
+	public enum Order {
+		/** The tasks are executed in the order they are added to the queue. */
+		FIFO,
+		
+		/**
+		 * The tasks with higher priority are executed first.
+		 * Tasks with equal priority are executed in FIFO order.
+		 * @see Task#getPriority
+		 */
+		PRIORITY,
+		
+		/**
+		 * The task with the earliest deadline is executed first. Tasks without
+		 * deadline are executed after the tasks with deadline in FIFO order.
+		 * @see Task#getDeadline
+		 */
+		DEADLINE
+	}
+	
+	/**
+	 * Specifies what happens when a task is added while a task
+	 * with an equal coalescing key is pending.
+	 * @see Task#getCoalescingKey
+	 */
+	public enum Coalescing {
+		/** Coalescing is disabled - all tasks are queued. */
+		NONE,
+		
+		/** The new task is discarded and the pending task remains in the queue. */
+		DISCARD_NEW,
+		
+		/**
+		 * The new task takes the place of the pending task, which is discarded.
+		 * Note that the new task retains the position of the replaced task in the queue.
+		 */
+		REPLACE_PENDING
+	}
+	
+	/**
+	 * Specifies what happens when a task is added to a full queue.
+	 * @see #setCapacity
+	 */
+	public enum OverflowPolicy {
+		/** The producer is blocked until there is space in the queue. */
+		BLOCK,
+		
+		/** A <code>RejectedExecutionException</code> is thrown. */
+		REJECT,
+		
+		/** The task that has been pending for the longest time is removed from the queue. */
+		DROP_OLDEST,
+		
+		/** The new task is discarded. */
+		DROP_NEWEST,
+		
+		/**
+		 * The new task takes the place of the pending task with an equal
+		 * {@link Task#getCoalescingKey coalescing key}. If there is no
+		 * such task, the new task is discarded.
+		 */
+		COALESCE
+	}
+	
 	private final String name;
-	private final LinkedList<Task> taskQueue = new LinkedList<Task>();
-	private Task currentTask;
+	
+	/** The newly added tasks. In FIFO order this is the only task storage. */
+	private final ConcurrentLinkedQueue<Entry> taskQueue = new ConcurrentLinkedQueue<Entry>();
+	private final ArrayList<Task> runningTasks = new ArrayList<Task>();
+	
+	/**
+	 * Guards <code>orderedTasks</code>. In priority order the workers move the newly added
+	 * tasks from <code>taskQueue</code> to <code>orderedTasks</code> before fetching.
+	 */
+	private final Object orderLock = new Object();
+	private PriorityQueue<Entry> orderedTasks = null;
+	private volatile Order order = Order.FIFO;
+	private long agingInterval = 0;
+	private long nextSeq = 0;
+	
+	/**
+	 * Maps the coalescing keys to the pending entries. Guarded by <code>orderLock</code>.
+	 * Note that the entries removed through this index are only marked as removed
+	 * and are skipped when fetched from the queue.
+	 */
+	private final HashMap<Object, Entry> coalescingIndex = new HashMap<Object, Entry>();
+	private volatile Coalescing coalescing = Coalescing.NONE;
+	
+	/**
+	 * Determines whether the coalescing keys are indexed,
+	 * which is needed for coalescing and for the <code>COALESCE</code> overflow policy.
+	 */
+	private volatile boolean indexKeys = false;
+	
+	/** The maximum number of pending tasks or <code>0</code> if the queue is unbounded. */
+	private volatile int capacity = 0;
+	private volatile OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+	
+	/** The producers waiting for space in a full queue wait on this lock. */
+	private final Object spaceLock = new Object();
+	
+	/** The number of producers waiting for space. Modified with <code>spaceLock</code> held. */
+	private volatile int blockedProducers = 0;
+	
+	private volatile int highWatermark = 0;
+	private volatile int lowWatermark = 0;
+	
+	/** Guarded by <code>stateLock</code>. */
+	private volatile boolean aboveHighWatermark = false;
+	
+	private volatile TaskQueueMetrics metrics = null;
+	
+	/**
+	 * The futures of the {@link #submit submitted} tasks that are not done yet.
+	 * They are completed exceptionally if their tasks leave the queue without
+	 * being executed.
+	 */
+	private final Map<Task, CompletableFuture<?>> submittedTasks =
+		Collections.synchronizedMap(new IdentityHashMap<Task, CompletableFuture<?>>());
+	
+	/** The schedules of this queue which are not cancelled yet. */
+	private final Set<TaskSchedule> schedules =
+		Collections.synchronizedSet(new LinkedHashSet<TaskSchedule>());
+	
+	private boolean managed = false;
+	
+	/** The number of worker threads that haven't exited yet. */
+	private final AtomicInteger liveWorkers = new AtomicInteger();
+	
+	/**
+	 * The number of pending tasks. It is incremented before a task is
+	 * added to the queue and decremented after a task is removed from it.
+	 */
+	private final AtomicInteger pendingCount = new AtomicInteger();
+	
+	/** The workers waiting for new tasks. */
+	private final ConcurrentLinkedQueue<Thread> waitingWorkers =
+		new ConcurrentLinkedQueue<Thread>();
+	
+	/**
+	 * Guards the transitions of the <code>filled</code> and <code>idle</code> states.
+	 * The listeners are never notified while this lock is held.
+	 */
+	private final Object stateLock = new Object();
+	
+	/** The state events waiting to be delivered, in the order of the state transitions. */
+	private final ConcurrentLinkedQueue<TaskQueueEvent> stateEvents =
+		new ConcurrentLinkedQueue<TaskQueueEvent>();
+	
+	/** Set while a thread delivers the state events. */
+	private final AtomicBoolean firingStateEvents = new AtomicBoolean(false);
+	
+	private int workerCount = 1;
+	private volatile int batchSize = 1;
+	private volatile long taskTimeout = 0;
+	private Executor executor = null;
 	
 	private boolean started = false;
-	private boolean cancel = false;
-	private boolean stop = false;
+	private volatile boolean cancel = false;
+	private volatile boolean stop = false;
 	
-	private boolean idle = true;
+	private volatile boolean filled = false;
+	private volatile boolean idle = true;
 	
 	/** Creates a new instance of <code>TaskQueue</code>. */
 	public
@@ -58,133 +285,1329 @@ public class TaskQueue {
 	TaskQueue(String name) { this(name, (Task[])null); }
 	
 	/**
-	 * Creates a new instance of <code>TaskQueue</code> and adds the
-	 * specified tasks to the queue.
-	 * @param tasks The tasks to be added.
+	 * Creates a new instance of <code>TaskQueue</code> and adds the
+	 * specified tasks to the queue.
+	 * @param tasks The tasks to be added.
+	 */
+	public
+	TaskQueue(Task... tasks) { this("TaskQueue-" + getSerialNumber(), tasks); }
+	
+	/**
+	 * Creates a new instance of <code>TaskQueue</code> with the
+	 * specified name and adds the specified tasks to the queue.
+	 * @param name The name of this task queue.
+	 * @param tasks The tasks to be added.
+	 */
+	public
+	TaskQueue(String name, Task... tasks) {
+		this.name = name;
+		if(tasks == null) return;
+		for(Task t : tasks) add(t);
+	}
+	
+	/** Holds a pending task along with the data needed for ordering it. */
+	private static class Entry {
+		/** Can be replaced while the entry is pending if the entry has a key. */
+		Task task;
+		
+		/** The schedule that added the task or <code>null</code>. Replaced along with the task. */
+		TaskSchedule schedule;
+		
+		final Object key;
+		final int priority;
+		final long deadline;
+		final long enqueueTime;
+		
+		/** Guarded by <code>orderLock</code>. */
+		boolean removed = false;
+		
+		/** The position in which the task was moved to the ordered storage. */
+		long seq;
+		
+		/** The ordering key used when aging is enabled. */
+		long rank;
+		
+		Entry(Task task, TaskSchedule schedule, Object key) {
+			this.task = task;
+			this.schedule = schedule;
+			this.key = key;
+			priority = task.getPriority();
+			deadline = task.getDeadline();
+			enqueueTime = System.nanoTime();
+		}
+	}
+	
+	/**
+	 * Gets the name of this task queue.
+	 * @return The name of this task queue.
+	 */
+	public String
+	getName() { return name; }
+	
+	/**
+	 * Gets the number of worker threads used to process the tasks in this queue.
+	 * @return The maximum number of tasks that can be executed simultaneously.
+	 * @see #setWorkerCount
+	 */
+	public synchronized int
+	getWorkerCount() { return workerCount; }
+	
+	/**
+	 * Sets the number of worker threads used to process the tasks in this queue.
+	 * The default value is <code>1</code>, which means that the tasks are
+	 * executed sequentially. The change takes effect on the next {@link #start}.
+	 * @param n The maximum number of tasks that can be executed simultaneously.
+	 * Specify <code>0</code> to use as many workers as there are available processors.
+	 * @throws IllegalArgumentException If <code>n</code> is negative.
+	 * @throws IllegalStateException If the queue is running.
+	 */
+	public synchronized void
+	setWorkerCount(int n) {
+		if(n < 0) throw new IllegalArgumentException("Negative worker count: " + n);
+		if(isRunning())
+			throw new IllegalStateException(getName() + " queue is already running");
+		
+		workerCount = n == 0 ? Runtime.getRuntime().availableProcessors() : n;
+	}
+	
+	/**
+	 * Gets the maximum number of tasks a worker fetches from the queue at once.
+	 * @return The maximum number of tasks a worker fetches at once.
+	 * @see #setBatchSize
+	 */
+	public int
+	getBatchSize() { return batchSize; }
+	
+	/**
+	 * Sets the maximum number of tasks a worker fetches from the queue at once.
+	 * The default value is <code>1</code>. The tasks fetched at once are executed
+	 * one after another by the same worker, and the <code>TASK_FETCHED</code> and
+	 * <code>TASK_DONE</code> events of the whole batch are delivered together.
+	 * {@link BatchTask Batch tasks} with equal batch keys in the same batch are executed
+	 * as a single operation at the position of the first of them.
+	 * @param n The maximum number of tasks a worker fetches at once.
+	 * @throws IllegalArgumentException If <code>n</code> is less than <code>1</code>.
+	 */
+	public void
+	setBatchSize(int n) {
+		if(n < 1) throw new IllegalArgumentException("Invalid batch size: " + n);
+		batchSize = n;
+	}
+	
+	/**
+	 * Gets the maximum time a task in this queue is allowed to run,
+	 * unless the task specifies its own timeout.
+	 * @return The default task timeout in milliseconds or <code>0</code> if not set.
+	 * @see #setTaskTimeout
+	 */
+	public long
+	getTaskTimeout() { return taskTimeout; }
+	
+	/**
+	 * Sets the maximum time a task in this queue is allowed to run, unless the task
+	 * specifies its own {@link Task#getTimeout timeout}. When a task times out, it is
+	 * stopped, a <code>TIMED_OUT</code> event is fired and a new worker is started
+	 * to replace the one executing the timed out task. Instances of
+	 * <code>AbstractTask</code> finish with {@link AbstractTask#TIMEOUT_ERROR} error code.
+	 * Note that the tasks fetched in the same batch with a timed out task are
+	 * still executed by the replaced worker.
+	 * @param millis The default task timeout in milliseconds or <code>0</code> to disable it.
+	 * @throws IllegalArgumentException If <code>millis</code> is negative.
+	 */
+	public void
+	setTaskTimeout(long millis) {
+		if(millis < 0) throw new IllegalArgumentException("Negative timeout: " + millis);
+		taskTimeout = millis;
+	}
+	
+	/**
+	 * Gets the statistics collected for this queue.
+	 * @return The metrics of this queue or <code>null</code> if metrics collection is disabled.
+	 * @see #setMetricsEnabled
+	 */
+	public TaskQueueMetrics
+	getMetrics() { return metrics; }
+	
+	/**
+	 * Enables or disables the collection of statistics for this queue.
+	 * Collection is disabled by default. Disabling it discards the collected statistics.
+	 * @param b Specifies whether statistics should be collected.
+	 * @see #getMetrics
+	 */
+	public synchronized void
+	setMetricsEnabled(boolean b) {
+		if(b == (metrics != null)) return;
+		metrics = b ? new TaskQueueMetrics(this) : null;
+	}
+	
+	/**
+	 * Determines whether an MXBean of this queue is registered
+	 * in the platform MBean server while the queue is running.
+	 * @return <code>true</code> if this queue is managed, <code>false</code> otherwise.
+	 * @see #setManaged
+	 */
+	public synchronized boolean
+	isManaged() { return managed; }
+	
+	/**
+	 * Specifies whether an MXBean of this queue should be registered in the
+	 * platform MBean server while the queue is running. The MXBean is registered
+	 * when the queue is started and is unregistered when the queue is stopped
+	 * and all of its workers have exited. Note that the metrics of the
+	 * queue should be {@link #setMetricsEnabled enabled} to get statistics.
+	 * The MXBean is not registered if the <code>java.management</code>
+	 * module is not present.
+	 * @param b Specifies whether this queue should be managed.
+	 * @see com.grigoriliev.jsampler.juife.management.TaskQueueMXBean
+	 */
+	public synchronized void
+	setManaged(boolean b) {
+		if(b == managed) return;
+		managed = b;
+		
+		if(!b) Management.unregister(this);
+		else if(isStarted() && (!isStopped() || liveWorkers.get() > 0)) {
+			Management.register(this);
+		}
+	}
+	
+	/**
+	 * Gets the executor used to run the workers of this queue.
+	 * @return The executor of this queue or <code>null</code>
+	 * if the default executor is used.
+	 * @see TaskExecutors#getDefaultExecutor
+	 */
+	public synchronized Executor
+	getExecutor() { return executor; }
+	
+	/**
+	 * Sets the executor used to run the workers of this queue.
+	 * Note that each worker occupies a thread of the executor until the queue is
+	 * stopped, so bounded executors should provide at least {@link #getWorkerCount}
+	 * threads. The change takes effect on the next {@link #start}.
+	 * @param executor The executor to use or <code>null</code> to use the default one.
+	 * @see TaskExecutors
+	 */
+	public synchronized void
+	setExecutor(Executor executor) { this.executor = executor; }
+	
+	/**
+	 * Gets the order in which the tasks are fetched from this queue.
+	 * @return The order in which the tasks are fetched from this queue.
+	 * @see #setOrder
+	 */
+	public Order
+	getOrder() { return order; }
+	
+	/**
+	 * Sets the order in which the tasks are fetched from this queue.
+	 * The default order is {@link Order#FIFO}.
+	 * @param order The order in which the tasks should be fetched.
+	 * @throws IllegalStateException If the queue is running.
+	 */
+	public synchronized void
+	setOrder(Order order) {
+		if(order == null) throw new IllegalArgumentException("order should be non-null");
+		if(isRunning())
+			throw new IllegalStateException(getName() + " queue is already running");
+		
+		synchronized(orderLock) {
+			if(order == this.order) return;
+			
+			if(order == Order.FIFO) {
+				// the previously ordered tasks go before the newly added ones
+				ArrayList<Entry> entries = new ArrayList<Entry>(Arrays.asList(getOrderedEntries()));
+				for(Entry e = taskQueue.poll(); e != null; e = taskQueue.poll()) entries.add(e);
+				taskQueue.addAll(entries);
+				orderedTasks = null;
+			} else {
+				PriorityQueue<Entry> q = new PriorityQueue<Entry>(16, createComparator(order));
+				if(orderedTasks != null) q.addAll(orderedTasks);
+				orderedTasks = q;
+			}
+			
+			this.order = order;
+		}
+	}
+	
+	/**
+	 * Gets the aging interval used to prevent starvation
+	 * of the low priority tasks in priority order.
+	 * @return The aging interval in milliseconds or <code>0</code> if aging is disabled.
+	 * @see #setAgingInterval
+	 */
+	public long
+	getAgingInterval() {
+		synchronized(orderLock) { return agingInterval; }
+	}
+	
+	/**
+	 * Sets the aging interval used to prevent starvation of the low priority tasks
+	 * in priority order. For each aging interval spent in the queue the priority of a
+	 * task is effectively increased by one. This method affects only the priority order.
+	 * @param millis The aging interval in milliseconds or <code>0</code> to disable aging.
+	 * @throws IllegalArgumentException If <code>millis</code> is negative.
+	 */
+	public void
+	setAgingInterval(long millis) {
+		if(millis < 0) throw new IllegalArgumentException("Negative aging interval: " + millis);
+		
+		synchronized(orderLock) {
+			agingInterval = millis;
+			if(orderedTasks == null) return;
+			
+			PriorityQueue<Entry> q = new PriorityQueue<Entry>(16, createComparator(order));
+			for(Entry e : orderedTasks) {
+				rankEntry(e);
+				q.add(e);
+			}
+			orderedTasks = q;
+		}
+	}
+	
+	/**
+	 * Gets the coalescing mode of this queue.
+	 * @return The coalescing mode of this queue.
+	 * @see #setCoalescing
+	 */
+	public Coalescing
+	getCoalescing() { return coalescing; }
+	
+	/**
+	 * Sets the coalescing mode of this queue. The default mode is {@link Coalescing#NONE}.
+	 * Note that in coalescing mode adding a task with non-null coalescing key
+	 * is not lock-free.
+	 * @param coalescing Specifies what should happen when a task is added
+	 * while a task with an equal coalescing key is pending.
+	 * @see Task#getCoalescingKey
+	 */
+	public void
+	setCoalescing(Coalescing coalescing) {
+		if(coalescing == null) throw new IllegalArgumentException("coalescing should be non-null");
+		
+		synchronized(orderLock) {
+			this.coalescing = coalescing;
+			updateIndexKeys();
+		}
+	}
+	
+	/** This method should be called with <code>orderLock</code> held. */
+	private void
+	updateIndexKeys() {
+		indexKeys = coalescing != Coalescing.NONE || overflowPolicy == OverflowPolicy.COALESCE;
+		if(!indexKeys) coalescingIndex.clear();
+	}
+	
+	/**
+	 * Gets the maximum number of pending tasks in this queue.
+	 * @return The capacity of this queue or <code>0</code> if the queue is unbounded.
+	 * @see #setCapacity
+	 */
+	public int
+	getCapacity() { return capacity; }
+	
+	/**
+	 * Sets the maximum number of pending tasks in this queue. When a task is added
+	 * to a full queue, the {@link #setOverflowPolicy overflow policy} of the queue
+	 * determines what happens. By default the queue is unbounded.
+	 * Note that the tasks discarded due to coalescing don't take space in the queue.
+	 * @param capacity The maximum number of pending tasks or
+	 * <code>0</code> to make the queue unbounded.
+	 * @throws IllegalArgumentException If <code>capacity</code> is negative.
+	 * @see #setWatermarks
+	 */
+	public void
+	setCapacity(int capacity) {
+		if(capacity < 0) throw new IllegalArgumentException("Negative capacity: " + capacity);
+		this.capacity = capacity;
+		wakeUpProducers();
+	}
+	
+	/**
+	 * Gets the policy applied when a task is added to a full queue.
+	 * @return The overflow policy of this queue.
+	 * @see #setOverflowPolicy
+	 */
+	public OverflowPolicy
+	getOverflowPolicy() { return overflowPolicy; }
+	
+	/**
+	 * Sets the policy applied when a task is added to a full queue.
+	 * The default policy is {@link OverflowPolicy#BLOCK}.
+	 * Note that the UI thread should never be blocked, so the tasks added from the
+	 * UI thread to a bounded queue should use a policy that does not block.
+	 * @param policy The overflow policy of this queue.
+	 * @see #setCapacity
+	 */
+	public void
+	setOverflowPolicy(OverflowPolicy policy) {
+		if(policy == null) throw new IllegalArgumentException("policy should be non-null");
+		
+		synchronized(orderLock) {
+			overflowPolicy = policy;
+			updateIndexKeys();
+		}
+		wakeUpProducers();
+	}
+	
+	/**
+	 * Gets the number of pending tasks at which a <code>HIGH_WATERMARK</code> event is fired.
+	 * @return The high watermark or <code>0</code> if the watermark events are disabled.
+	 * @see #setWatermarks
+	 */
+	public int
+	getHighWatermark() { return highWatermark; }
+	
+	/**
+	 * Gets the number of pending tasks at which a <code>LOW_WATERMARK</code> event is fired.
+	 * @return The low watermark.
+	 * @see #setWatermarks
+	 */
+	public int
+	getLowWatermark() { return lowWatermark; }
+	
+	/**
+	 * Sets the watermarks of this queue. A <code>HIGH_WATERMARK</code> event is fired
+	 * when the number of pending tasks reaches the high watermark and a
+	 * <code>LOW_WATERMARK</code> event is fired when after that the number of
+	 * pending tasks drops to the low watermark. Thus, the producers can throttle
+	 * themselves before the queue is full.
+	 * @param high The high watermark or <code>0</code> to disable the watermark events.
+	 * @param low The low watermark.
+	 * @throws IllegalArgumentException If <code>low</code> is negative or
+	 * <code>high</code> is positive and not greater than <code>low</code>.
+	 */
+	public void
+	setWatermarks(int high, int low) {
+		if(low < 0 || high < 0 || (high > 0 && high <= low)) {
+			throw new IllegalArgumentException("Invalid watermarks: " + high + ", " + low);
+		}
+		
+		synchronized(stateLock) {
+			highWatermark = high;
+			lowWatermark = low;
+		}
+		updateWatermarkState();
+	}
+	
+	/** This method should be called with <code>orderLock</code> held. */
+	private Comparator<Entry>
+	createComparator(Order order) {
+		if(order == Order.DEADLINE) return new Comparator<Entry>() {
+			public int
+			compare(Entry e1, Entry e2) {
+				if(e1.deadline != e2.deadline) {
+					if(e1.deadline == 0) return 1;
+					if(e2.deadline == 0) return -1;
+					return e1.deadline < e2.deadline ? -1 : 1;
+				}
+				return Long.compare(e1.seq, e2.seq);
+			}
+		};
+		
+		if(agingInterval == 0) return new Comparator<Entry>() {
+			public int
+			compare(Entry e1, Entry e2) {
+				if(e1.priority != e2.priority) return e1.priority > e2.priority ? -1 : 1;
+				return Long.compare(e1.seq, e2.seq);
+			}
+		};
+		
+		return new Comparator<Entry>() {
+			public int
+			compare(Entry e1, Entry e2) {
+				if(e1.rank != e2.rank) return e1.rank < e2.rank ? -1 : 1;
+				return Long.compare(e1.seq, e2.seq);
+			}
+		};
+	}
+	
+	/**
+	 * Updates the ordering key of the specified entry.
+	 * This method should be called with <code>orderLock</code> held.
+	 */
+	private void
+	rankEntry(Entry e) {
+		e.rank = e.enqueueTime - e.priority * agingInterval * 1000000L;
+	}
+	
+	/**
+	 * Moves the newly added tasks to the ordered storage.
+	 * This method should be called with <code>orderLock</code> held.
+	 */
+	private void
+	drainNewTasks() {
+		for(Entry e = taskQueue.poll(); e != null; e = taskQueue.poll()) {
+			if(e.removed) continue;
+			e.seq = nextSeq++;
+			rankEntry(e);
+			orderedTasks.add(e);
+		}
+	}
+	
+	/**
+	 * Gets all pending entries in the order they will be fetched.
+	 * This method should be called with <code>orderLock</code> held.
+	 */
+	private Entry[]
+	getOrderedEntries() {
+		ArrayList<Entry> list = new ArrayList<Entry>();
+		if(orderedTasks == null) {
+			for(Entry e : taskQueue) if(!e.removed) list.add(e);
+			return list.toArray(new Entry[0]);
+		}
+		
+		drainNewTasks();
+		for(Entry e : orderedTasks) if(!e.removed) list.add(e);
+		Entry[] entries = list.toArray(new Entry[0]);
+		Arrays.sort(entries, orderedTasks.comparator());
+		return entries;
+	}
+	
+	/**
+	 * Removes the next <code>max</code> tasks to be executed
+	 * from the queue and adds them to <code>tasks</code>.
+	 */
+	private void
+	pollTasks(List<Task> tasks, int max) {
+		if(order == Order.FIFO) {
+			while(tasks.size() < max) {
+				Entry e = taskQueue.poll();
+				if(e == null) return;
+				if(e.key == null) fetchEntry(e, tasks);
+				else synchronized(orderLock) { claimEntry(e, tasks); }
+			}
+			return;
+		}
+		
+		synchronized(orderLock) {
+			if(orderedTasks != null) drainNewTasks();
+			
+			while(tasks.size() < max) {
+				Entry e = orderedTasks == null ? taskQueue.poll() : orderedTasks.poll();
+				if(e == null) return;
+				claimEntry(e, tasks);
+			}
+		}
+	}
+	
+	/**
+	 * Adds the task of the specified entry to <code>tasks</code> unless the entry is removed.
+	 * This method should be called with <code>orderLock</code> held.
+	 */
+	private void
+	claimEntry(Entry e, List<Task> tasks) {
+		if(e.removed) return;
+		if(e.key != null) coalescingIndex.remove(e.key, e);
+		fetchEntry(e, tasks);
+	}
+	
+	/** Adds the task of the specified entry to <code>tasks</code>. */
+	private void
+	fetchEntry(Entry e, List<Task> tasks) {
+		tasks.add(e.task);
+		TaskQueueMetrics m = metrics;
+		if(m != null) m.taskFetched(e.task, System.nanoTime() - e.enqueueTime);
+	}
+	
+	/**
+	 * Adds the specified task to the queue.
+	 * Note that once the queue is started this method throws
+	 * an exception if the queue is not running.
+	 * This method can be safely called from multiple threads and does not block,
+	 * unless the queue is full and its overflow policy is {@link OverflowPolicy#BLOCK}.
+	 * @param task The task to be added.
+	 * @throws IllegalStateException If the queue is not running.
+	 * @throws RejectedExecutionException If the queue is full and its overflow
+	 * policy is {@link OverflowPolicy#REJECT}, or if the current thread is
+	 * interrupted while waiting for space in the queue.
+	 * @see #setCapacity
+	 */
+	public void
+	add(Task task) { add(task, null); }
+	
+	/**
+	 * Adds the specified task to the queue. The tasks added by a schedule never
+	 * block the caller and are discarded if the queue is full and its overflow policy
+	 * is <code>BLOCK</code>. The specified schedule, if non-null, is notified when
+	 * the task is discarded without being executed.
+	 */
+	void
+	add(Task task, TaskSchedule schedule) {
+		for(;;) {
+			if(isStopped()) throw new IllegalStateException(getName() + " queue is stopped");
+			if(offer(task, schedule)) break;
+			
+			switch(overflowPolicy) {
+			case BLOCK:
+				if(schedule == null) {
+					awaitSpace();
+					continue;
+				}
+				discarded(task, schedule, true);
+				break;
+			case REJECT:
+				TaskQueueMetrics m = metrics;
+				if(m != null) m.taskRejected();
+				throw new RejectedExecutionException(getName() + " queue is full");
+			case DROP_OLDEST:
+				dropOldest();
+				continue;
+			case DROP_NEWEST:
+				discarded(task, schedule, true);
+				break;
+			case COALESCE:
+				if(!replacePending(task, schedule)) discarded(task, schedule, true);
+				break;
+			}
+			break;
+		}
+	}
+	
+	/** Should be called after a task is enqueued. */
+	private void
+	taskAdded() {
+		TaskQueueMetrics m = metrics;
+		if(m != null) m.taskAdded(pendingCount.get());
+	}
+	
+	/**
+	 * Should be called when a task is removed or coalesced without being executed.
+	 * @param schedule The schedule that added the task or <code>null</code>.
+	 */
+	private void
+	discarded(Task task, TaskSchedule schedule) { discarded(task, schedule, false); }
+	
+	/**
+	 * Should be called when a task leaves the queue without being executed.
+	 * @param schedule The schedule that added the task or <code>null</code>.
+	 * @param dropped Specifies whether the task is dropped because the queue is full.
+	 */
+	private void
+	discarded(Task task, TaskSchedule schedule, boolean dropped) {
+		TaskQueueMetrics m = metrics;
+		if(m != null) {
+			if(dropped) m.taskDropped();
+			else m.tasksDiscarded(1);
+		}
+		if(schedule != null) schedule.taskDiscarded(task);
+		cancelFuture(task);
+	}
+	
+	/**
+	 * Completes the future of the specified task with <code>CancellationException</code>
+	 * if the task has been submitted. Should be called when a task leaves
+	 * the queue without being executed.
+	 */
+	private void
+	cancelFuture(Task task) {
+		if(submittedTasks.isEmpty()) return;
+		CompletableFuture<?> f = submittedTasks.remove(task);
+		if(f == null) return;
+		f.completeExceptionally (
+			new CancellationException("The task has been discarded by " + getName() + " queue")
+		);
+	}
+	
+	/**
+	 * Completes the future of the specified task with <code>TaskException</code>
+	 * if the task has been submitted and has not finished successfully.
+	 * Should be called when the execution of the task throws an exception.
+	 */
+	private void
+	failFuture(Task task, Throwable x) {
+		if(submittedTasks.isEmpty()) return;
+		// the future of a task, which has finished successfully, may be completed later
+		if(task.done() && !task.doneWithErrors()) return;
+		CompletableFuture<?> f = submittedTasks.remove(task);
+		if(f != null) f.completeExceptionally(new TaskException(task, x));
+	}
+	
+	/**
+	 * Adds the specified task to the queue if the queue is not full.
+	 * @return <code>false</code> if the queue is full, <code>true</code>
+	 * if the task is added or discarded due to coalescing.
+	 */
+	private boolean
+	offer(Task task, TaskSchedule schedule) {
+		Entry e;
+		Object key = indexKeys ? task.getCoalescingKey() : null;
+		if(key == null) {
+			if(!reserveSlot()) return false;
+			e = new Entry(task, schedule, null);
+		} else {
+			Task discardedTask = null;
+			TaskSchedule discardedSchedule = null;
+			
+			synchronized(orderLock) {
+				e = coalescingIndex.get(key);
+				if(e == null || coalescing == Coalescing.NONE) {
+					if(!reserveSlot()) return false;
+					e = new Entry(task, schedule, key);
+					coalescingIndex.put(key, e);
+				} else if(coalescing == Coalescing.REPLACE_PENDING) {
+					discardedTask = e.task;
+					discardedSchedule = e.schedule;
+					e.task = task;
+					e.schedule = schedule;
+				} else {
+					discardedTask = task;
+					discardedSchedule = schedule;
+				}
+			}
+			
+			if(discardedTask != null) {
+				// the specified task is enqueued in place of the discarded one
+				if(discardedTask != task) taskAdded();
+				discarded(discardedTask, discardedSchedule);
+				return true;
+			}
+		}
+		
+		// the entry is published and a worker is woken up before any listener
+		// is notified, so that the workers don't wait for the listeners
+		taskQueue.offer(e);
+		wakeUpWorker();
+		taskAdded();
+		if(!filled) updateFilledState();
+		if(idle) updateIdleState();
+		
+		int hwm = highWatermark;
+		if(hwm > 0 && !aboveHighWatermark && pendingCount.get() >= hwm) updateWatermarkState();
+		
+		return true;
+	}
+	
+	/**
+	 * Increments the number of pending tasks unless the queue is full.
+	 * @return <code>true</code> on success, <code>false</code> if the queue is full.
+	 */
+	private boolean
+	reserveSlot() {
+		int cap = capacity;
+		if(cap == 0) {
+			pendingCount.incrementAndGet();
+			return true;
+		}
+		
+		for(;;) {
+			int n = pendingCount.get();
+			if(n >= cap) return false;
+			if(pendingCount.compareAndSet(n, n + 1)) return true;
+		}
+	}
+	
+	/** Blocks the calling thread until the queue is not full or is stopped. */
+	private void
+	awaitSpace() {
+		synchronized(spaceLock) {
+			blockedProducers++;
+			try {
+				for(;;) {
+					int cap = capacity;
+					if(cap == 0 || pendingCount.get() < cap || isStopped()) return;
+					spaceLock.wait();
+				}
+			} catch(InterruptedException x) {
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException (
+					"Interrupted while waiting for space in " + getName() + " queue"
+				);
+			} finally {
+				blockedProducers--;
+			}
+		}
+	}
+	
+	/** Wakes up the producers waiting for space in the queue, if any. */
+	private void
+	wakeUpProducers() {
+		if(blockedProducers == 0) return;
+		synchronized(spaceLock) { spaceLock.notifyAll(); }
+	}
+	
+	/**
+	 * Should be called after the number of pending tasks is decreased.
+	 * @param n The new number of pending tasks.
+	 */
+	private void
+	pendingCountDecreased(int n) {
+		if(aboveHighWatermark && n <= lowWatermark) updateWatermarkState();
+		wakeUpProducers();
+	}
+	
+	/** Removes the task that has been pending for the longest time, if any. */
+	private void
+	dropOldest() {
+		Entry e = null;
+		synchronized(orderLock) {
+			if(orderedTasks == null) {
+				do { e = taskQueue.poll(); } while(e != null && e.removed);
+			} else {
+				drainNewTasks();
+				for(Entry e2 : orderedTasks) {
+					if(e2.removed) continue;
+					if(e == null || e2.seq < e.seq) e = e2;
+				}
+				if(e != null) orderedTasks.remove(e);
+			}
+			
+			if(e == null) return;
+			if(e.key != null) coalescingIndex.remove(e.key, e);
+		}
+		
+		int n = pendingCount.decrementAndGet();
+		if(n == 0) {
+			updateFilledState();
+			updateIdleState();
+		}
+		pendingCountDecreased(n);
+		
+		discarded(e.task, e.schedule, true);
+	}
+	
+	/**
+	 * Replaces the pending task with coalescing key equal to the key of the specified task.
+	 * @return <code>true</code> if the task is replaced,
+	 * <code>false</code> if there is no such pending task.
+	 */
+	private boolean
+	replacePending(Task task, TaskSchedule schedule) {
+		Object key = indexKeys ? task.getCoalescingKey() : null;
+		if(key == null) return false;
+		
+		Task discardedTask;
+		TaskSchedule discardedSchedule;
+		synchronized(orderLock) {
+			Entry e = coalescingIndex.get(key);
+			if(e == null) return false;
+			discardedTask = e.task;
+			discardedSchedule = e.schedule;
+			e.task = task;
+			e.schedule = schedule;
+		}
+		
+		taskAdded();
+		discarded(discardedTask, discardedSchedule);
+		return true;
+	}
+	
+	/**
+	 * Fires <code>HIGH_WATERMARK</code> or <code>LOW_WATERMARK</code>
+	 * event if the queue has crossed the corresponding watermark.
+	 */
+	private void
+	updateWatermarkState() {
+		do {
+			synchronized(stateLock) {
+				boolean b = isAboveHighWatermark0();
+				if(b == aboveHighWatermark) break;
+				aboveHighWatermark = b;
+				if(hasListeners()) stateEvents.add (new TaskQueueEvent (
+					this, b ? TaskQueueEvent.ID.HIGH_WATERMARK : TaskQueueEvent.ID.LOW_WATERMARK
+				));
+			}
+		} while(isAboveHighWatermark0() != aboveHighWatermark);
+		
+		fireStateEvents();
+	}
+	
+	/**
+	 * Determines whether the queue should be in high watermark state,
+	 * given its current watermark state.
+	 */
+	private boolean
+	isAboveHighWatermark0() {
+		int n = pendingCount.get();
+		int hwm = highWatermark;
+		if(aboveHighWatermark) return hwm > 0 && n > lowWatermark;
+		return hwm > 0 && n >= hwm;
+	}
+	
+	/**
+	 * Adds the specified task to the queue after the specified delay.
+	 * The delay is measured by a timer thread shared by all queues.
+	 * @param task The task to be added.
+	 * @param delay The delay in milliseconds.
+	 * @return The schedule, which can be used to cancel the addition of the task.
+	 * @throws IllegalArgumentException If <code>delay</code> is negative.
+	 */
+	public TaskSchedule
+	schedule(final Task task, long delay) {
+		if(task == null) throw new IllegalArgumentException("task should be non-null");
+		
+		TaskSchedule s = new TaskSchedule(this, new Supplier<Task>() {
+			public Task
+			get() { return task; }
+		}, 0, false);
+		startSchedule(s, delay);
+		return s;
+	}
+	
+	/**
+	 * Periodically adds the tasks created by the specified factory to the queue.
+	 * The first task is added after the initial delay and the next ones every
+	 * <code>period</code> milliseconds, regardless of whether the previous
+	 * tasks are already executed. Use {@link #setCoalescing coalescing} to avoid
+	 * accumulation of pending tasks if the queue can't keep up with the period.
+	 * Since a task can be executed only once, a new task is created for each addition.
+	 * The factory is invoked on a pooled thread, not on the shared timer thread.
+	 * If the previous task is still being created or added when the period elapses,
+	 * the addition is skipped. If the factory returns <code>null</code>, nothing is added.
+	 * The schedule is cancelled when the queue is stopped.
+	 * @param factory Creates the tasks to be added.
+	 * @param initialDelay The delay before adding the first task in milliseconds.
+	 * @param period The period between the additions in milliseconds.
+	 * @return The schedule, which can be used to stop adding tasks.
+	 * @throws IllegalArgumentException If <code>initialDelay</code> is negative
+	 * or <code>period</code> is not positive.
 	 */
-	public
-	TaskQueue(Task... tasks) { this("TaskQueue-" + getSerialNumber(), tasks); }
+	public TaskSchedule
+	scheduleAtFixedRate(Supplier<? extends Task> factory, long initialDelay, long period) {
+		if(period <= 0) throw new IllegalArgumentException("Invalid period: " + period);
+		
+		TaskSchedule s = new TaskSchedule(this, factory, period, true);
+		startSchedule(s, initialDelay);
+		return s;
+	}
 	
 	/**
-	 * Creates a new instance of <code>TaskQueue</code> with the
-	 * specified name and adds the specified tasks to the queue.
-	 * @param name The name of this task queue.
-	 * @param tasks The tasks to be added.
+	 * Repeatedly adds the tasks created by the specified factory to the queue.
+	 * The first task is added after the initial delay and each next one
+	 * <code>delay</code> milliseconds after the previous task is done, or is removed
+	 * from the queue or discarded due to coalescing or overflow. Thus, at most one task
+	 * created by the schedule is in the queue at a time.
+	 * The factory is invoked on a pooled thread, not on the shared timer thread.
+	 * If the factory returns <code>null</code>, the schedule stops.
+	 * The schedule is cancelled when the queue is stopped.
+	 * @param factory Creates the tasks to be added.
+	 * @param initialDelay The delay before adding the first task in milliseconds.
+	 * @param delay The delay between the completion of a task
+	 * and the addition of the next one in milliseconds.
+	 * @return The schedule, which can be used to stop adding tasks.
+	 * @throws IllegalArgumentException If <code>initialDelay</code> is negative
+	 * or <code>delay</code> is not positive.
 	 */
-	public
-	TaskQueue(String name, Task... tasks) {
-		this.name = name;
-		if(tasks == null) return;
-		for(Task t : tasks) add(t);
+	public TaskSchedule
+	scheduleWithFixedDelay(Supplier<? extends Task> factory, long initialDelay, long delay) {
+		if(delay <= 0) throw new IllegalArgumentException("Invalid delay: " + delay);
+		
+		TaskSchedule s = new TaskSchedule(this, factory, delay, false);
+		startSchedule(s, initialDelay);
+		return s;
 	}
 	
 	/**
-	 * Gets the name of this task queue.
-	 * @return The name of this task queue.
+	 * Registers and starts the specified schedule. The schedule is registered
+	 * before checking whether the queue is stopped, so it is cancelled either
+	 * here or by {@link #cancelSchedules}.
 	 */
-	public String
-	getName() { return name; }
+	private void
+	startSchedule(TaskSchedule s, long delay) {
+		schedules.add(s);
+		s.start(delay);
+		if(isStopped()) s.cancel();
+	}
+	
+	/** Invoked by a schedule of this queue when it is cancelled. */
+	void
+	scheduleCancelled(TaskSchedule s) { schedules.remove(s); }
+	
+	/** Cancels all schedules of this queue. */
+	private void
+	cancelSchedules() {
+		if(schedules.isEmpty()) return;
+		TaskSchedule[] a;
+		synchronized(schedules) { a = schedules.toArray(new TaskSchedule[schedules.size()]); }
+		for(TaskSchedule s : a) s.cancel();
+	}
 	
 	/**
-	 * Adds the specified task to the queue.
-	 * Note that once the queue is started this method throws
-	 * an exception if the queue is not running.
+	 * Adds the specified task to the queue and returns a future that is completed
+	 * when the task is done. If the task leaves the queue without being executed -
+	 * because it is {@link #removeTask removed}, discarded due to
+	 * {@link #setCoalescing coalescing}, dropped by the {@link #setOverflowPolicy
+	 * overflow policy}, or left pending when the queue is {@link #cancel cancelled} -
+	 * the future is completed exceptionally with <code>CancellationException</code>.
+	 * If the task finishes with errors, the future is completed exceptionally with
+	 * {@link TaskException}, whose cause is the exception thrown by the task, if any.
 	 * @param task The task to be added.
+	 * @return A future that is completed with the result of the task.
 	 * @throws IllegalStateException If the queue is not running.
+	 * @throws RejectedExecutionException If the queue is full and its overflow
+	 * policy is {@link OverflowPolicy#REJECT}.
+	 * @see TaskFutures#toCompletableFuture
 	 */
-	public synchronized void
-	add(Task task) {
-		boolean b;
-		
-		if(isStopped()) throw new IllegalStateException(getName() + " queue is stopped");
+	public <R> CompletableFuture<R>
+	submit(final Task<R> task) {
+		final CompletableFuture<R> future = TaskFutures.toCompletableFuture(task);
+		submittedTasks.put(task, future);
+		future.whenComplete(new BiConsumer<R, Throwable>() {
+			public void
+			accept(R result, Throwable t) { submittedTasks.remove(task, future); }
+		});
 		
-		taskQueue.add(task);
+		try { add(task); }
+		catch(RuntimeException x) {
+			submittedTasks.remove(task, future);
+			throw x;
+		}
+		return future;
+	}
+	
+	/*
+	 * The producers check the filled, idle and watermark states without a lock,
+	 * so a producer may miss a concurrent transition in the opposite direction.
+	 * To compensate, the thread that has made a transition checks the state
+	 * again after releasing stateLock and repeats the update until the state
+	 * matches the pending count. Since both sides write a volatile and then
+	 * read the other's volatile, at least one of them sees the change.
+	 */
+	
+	/**
+	 * Fires <code>FILLED</code> or <code>EMPTY</code> event
+	 * if the queue has changed its state.
+	 */
+	private void
+	updateFilledState() {
+		do {
+			synchronized(stateLock) {
+				boolean b = pendingCount.get() > 0;
+				if(b == filled) break;
+				filled = b;
+				if(hasListeners()) stateEvents.add (
+					new TaskQueueEvent(this, b ? TaskQueueEvent.ID.FILLED : TaskQueueEvent.ID.EMPTY)
+				);
+			}
+		} while((pendingCount.get() > 0) != filled);
 		
-		if(taskQueue.size() == 1)
-			fireTaskQueueEvent(new TaskQueueEvent(this, TaskQueueEvent.ID.FILLED));
+		fireStateEvents();
+	}
+	
+	/**
+	 * Fires <code>IDLE</code> or <code>NOT_IDLE</code> event
+	 * if the queue has changed its state.
+	 */
+	private void
+	updateIdleState() {
+		do {
+			synchronized(stateLock) {
+				boolean b = isIdle0();
+				if(b == idle) break;
+				idle = b;
+				if(hasListeners()) stateEvents.add (
+					new TaskQueueEvent(this, b ? TaskQueueEvent.ID.IDLE : TaskQueueEvent.ID.NOT_IDLE)
+				);
+			}
+		} while(isIdle0() != idle);
 		
-		if(isIdle()) {
-			idle = false;
-			fireTaskQueueEvent(new TaskQueueEvent(this, TaskQueueEvent.ID.NOT_IDLE));
+		fireStateEvents();
+	}
+	
+	/**
+	 * Delivers the queued state events unless another thread is already
+	 * delivering them. Since only one thread at a time delivers the state
+	 * events, they are delivered in the order of the state transitions.
+	 * This method should be called without holding any lock.
+	 */
+	private void
+	fireStateEvents() {
+		while(!stateEvents.isEmpty()) {
+			if(!firingStateEvents.compareAndSet(false, true)) return;
+			try {
+				for(TaskQueueEvent e = stateEvents.poll(); e != null; e = stateEvents.poll()) {
+					fireTaskQueueEvent(e);
+				}
+			} finally {
+				firingStateEvents.set(false);
+			}
+			// recheck, since the events queued meanwhile may have been left to us
+		}
+	}
+	
+	/** Determines whether the queue is empty and there are no running tasks. */
+	private boolean
+	isIdle0() {
+		synchronized(runningTasks) {
+			return pendingCount.get() == 0 && runningTasks.isEmpty();
+		}
+	}
+	
+	/** Wakes up one of the workers waiting for new tasks, if any. */
+	private void
+	wakeUpWorker() {
+		Thread t = waitingWorkers.poll();
+		if(t != null) LockSupport.unpark(t);
+	}
+	
+	private void
+	wakeUpAllWorkers() {
+		for(Thread t = waitingWorkers.poll(); t != null; t = waitingWorkers.poll()) {
+			LockSupport.unpark(t);
 		}
-		
-		notifyAll();
 	}
 	
 	/**
 	 * Starts the processing of tasks in the queue.
 	 * @throws IllegalStateException If the queue is already running.
 	 */
-	public synchronized void
+	public void
 	start() {
-		if(isRunning())
-			throw new IllegalStateException(getName() + " queue is already running");
-		
-		if(isStarted()) {
-			if(!isStopped()) 
+		int n;
+		synchronized(this) {
+			if(isRunning())
+				throw new IllegalStateException(getName() + " queue is already running");
 			
-			stop = false;
-			cancel = false;
+			if(isStarted()) {
+				if(!isStopped()) 
+				
+				stop = false;
+				cancel = false;
+			}
+			
+			started = true;
+			if(managed) Management.register(this);
+			n = workerCount;
+			if(hasListeners()) stateEvents.add(new TaskQueueEvent(this, TaskQueueEvent.ID.STARTED));
 		}
 		
-		started = true;
-		fireTaskQueueEvent(new TaskQueueEvent(this, TaskQueueEvent.ID.STARTED));
+		// the listeners are notified without holding the lock of the queue
+		fireStateEvents();
+		
+		for(int i = 0; i < n; i++) startWorker(n == 1 ? name : name + "-" + (i + 1));
+	}
+	
+	/** The state of a worker thread. */
+	private static class Worker {
+		/**
+		 * The task with a timeout that is currently executed by this worker. The worker
+		 * and the timer race to clear it, which decides whether the task has timed out.
+		 */
+		final AtomicReference<Task> currentTask = new AtomicReference<Task>();
 		
-		new Thread(name) {
+		/**
+		 * Set by the worker when its task has timed out and a replacement
+		 * worker is started. Accessed only by the worker thread.
+		 */
+		boolean abandoned = false;
+	}
+	
+	private int workerSerial = 0;
+	
+	/**
+	 * The maximum time in nanoseconds a worker waits for a task
+	 * that is counted as pending, but is not in the queue yet.
+	 */
+	private static final long IN_FLIGHT_WAIT = 1000000;
+	
+	private void
+	startWorker(String name) {
+		final Worker w = new Worker();
+		liveWorkers.incrementAndGet();
+		TaskExecutors.execute(executor, name, new Runnable() {
 			public void
-			run() { start0(); }
-		}.start();
+			run() {
+				try { start0(w); }
+				finally { workerExited(); }
+			}
+		});
+	}
+	
+	private void
+	workerExited() {
+		if(liveWorkers.decrementAndGet() > 0) return;
+		synchronized(this) {
+			if(managed && isStopped() && liveWorkers.get() == 0) Management.unregister(this);
+		}
 	}
 	
 	private void
-	start0() {
+	start0(Worker w) {
 		for(;;) {
-			processTheQueue();
+			processTheQueue(w);
+			if(w.abandoned) break;
 			
 			if(isStopped()) {
-				if(!isCancelled() && !isEmpty()) processTheQueue();
+				if(!isCancelled() && !isEmpty()) processTheQueue(w);
 				break;
 			}
 			
-			synchronized(this) {
-				if(!isEmpty()) continue;
-				try { wait(); }
-				catch(Exception x) { x.printStackTrace(); }
+			Thread t = Thread.currentThread();
+			waitingWorkers.offer(t);
+			// recheck after registering to avoid missing a wake-up call
+			if(isEmpty() && !isStopped()) LockSupport.park(this);
+			else if(taskQueue.isEmpty() && !isStopped()) {
+				// a task is reserved, but not offered yet - the producer
+				// wakes us up when it is; the timeout is just a safety net
+				LockSupport.parkNanos(this, IN_FLIGHT_WAIT);
 			}
+			waitingWorkers.remove(t);
 		}
 	}
 	
 	private void
-	processTheQueue() {
-		if(isEmpty()) return;
+	processTheQueue(Worker w) {
+		ArrayList<Task> tasks = new ArrayList<Task>();
+		ArrayList<TaskQueueEvent> events = new ArrayList<TaskQueueEvent>();
 		
 		while(!isCancelled()) {
-			synchronized(this) {
-				currentTask = taskQueue.poll();
-				fireTaskQueueEvent (
-					new TaskQueueEvent(currentTask, TaskQueueEvent.ID.TASK_FETCHED)
-				);
-				if(isEmpty()) fireTaskQueueEvent (
-					new TaskQueueEvent(this, TaskQueueEvent.ID.EMPTY)
-				);
+			pollTasks(tasks, batchSize);
+			if(tasks.isEmpty()) return;
+			
+			synchronized(runningTasks) { runningTasks.addAll(tasks); }
+			if(hasListeners()) {
+				for(Task t : tasks) {
+					events.add(new TaskQueueEvent(t, TaskQueueEvent.ID.TASK_FETCHED));
+				}
+				fireTaskQueueEvents(events);
+				events.clear();
 			}
-			currentTask.invokeAndWait();
-			synchronized(this) {
-				fireTaskQueueEvent (
-					new TaskQueueEvent(currentTask, TaskQueueEvent.ID.TASK_DONE)
-				);
-				
-				currentTask = null;
-				
-				if(isEmpty()) {
-					idle = true;
-					fireTaskQueueEvent (
-						new TaskQueueEvent(this, TaskQueueEvent.ID.IDLE)
-					);
-					return;
+			
+			int n = pendingCount.addAndGet(-tasks.size());
+			if(n == 0) updateFilledState();
+			else wakeUpWorker(); // let the other workers help
+			pendingCountDecreased(n);
+			
+			if(tasks.size() == 1) invokeAndWait(w, tasks.get(0), null);
+			else invokeAndWait(w, tasks);
+			
+			synchronized(runningTasks) {
+				for(Task t : tasks) runningTasks.remove(t);
+			}
+			if(hasListeners()) {
+				for(Task t : tasks) {
+					events.add(new TaskQueueEvent(t, TaskQueueEvent.ID.TASK_DONE));
 				}
+				fireTaskQueueEvents(events);
+				events.clear();
+			}
+			tasks.clear();
+			
+			if(pendingCount.get() == 0) updateIdleState();
+			
+			if(w.abandoned) return;
+		}
+	}
+	
+	/**
+	 * Executes the specified tasks one after another. The batch tasks with equal
+	 * batch keys are executed as a single operation at the position of the first of them.
+	 */
+	private void
+	invokeAndWait(Worker w, List<Task> tasks) {
+		boolean[] done = new boolean[tasks.size()];
+		
+		for(int i = 0; i < tasks.size(); i++) {
+			if(done[i]) continue;
+			Task t = tasks.get(i);
+			Object key = t instanceof BatchTask ? ((BatchTask)t).getBatchKey() : null;
+			if(key == null || t.isStarted()) {
+				invokeAndWait(w, t, null);
+				continue;
+			}
+			
+			ArrayList<BatchTask<?>> batch = new ArrayList<BatchTask<?>>();
+			batch.add((BatchTask<?>)t);
+			for(int j = i + 1; j < tasks.size(); j++) {
+				Task t2 = tasks.get(j);
+				// an already started task would make the whole batch fail
+				if(done[j] || !(t2 instanceof BatchTask) || t2.isStarted()) continue;
+				if(!key.equals(((BatchTask)t2).getBatchKey())) continue;
+				batch.add((BatchTask<?>)t2);
+				done[j] = true;
+			}
+			
+			invokeAndWait(w, t, batch.size() == 1 ? null : batch);
+		}
+	}
+	
+	/**
+	 * Executes the specified task, or the specified batch if non-null,
+	 * and enforces the timeout of the task.
+	 */
+	private void
+	invokeAndWait(final Worker w, final Task t, List<BatchTask<?>> batch) {
+		long timeout = t.getTimeout();
+		if(timeout == 0) timeout = taskTimeout;
+		
+		ScheduledFuture<?> f = null;
+		if(timeout > 0) {
+			// the task should not schedule a second timer of its own
+			if(t instanceof AbstractTask) ((AbstractTask<?>)t).setQueueTimed();
+			w.currentTask.set(t);
+			f = TaskExecutors.timer().schedule(new Runnable() {
+				public void
+				run() { onTimeout(w, t); }
+			}, timeout, TimeUnit.MILLISECONDS);
+		}
+		
+		long time = System.nanoTime();
+		try {
+			if(batch == null) t.invokeAndWait();
+			else ((BatchTask<?>)t).invokeBatchAndWait(batch);
+		} catch(Throwable x) {
+			// a failing task should not terminate the worker
+			x.printStackTrace();
+			if(batch == null) failFuture(t, x);
+			else for(Task t2 : batch) failFuture(t2, x);
+		} finally {
+			if(f != null) {
+				f.cancel(false);
+				// the timer has won the race, so a replacement worker is being started
+				if(!w.currentTask.compareAndSet(t, null)) w.abandoned = true;
 			}
 		}
+		
+		TaskQueueMetrics m = metrics;
+		if(m == null) return;
+		time = System.nanoTime() - time;
+		if(batch == null) m.taskDone(t, time);
+		else for(Task t2 : batch) m.taskDone(t2, time);
+	}
+	
+	/**
+	 * Invoked from the timer thread when a task times out. Takes the task over from
+	 * the worker, unless the worker has already finished it, and hands the rest over
+	 * to {@link #timedOut}, so that the shared timer thread never executes the
+	 * <code>stop()</code> method of a task or the listeners of the queue.
+	 */
+	private void
+	onTimeout(Worker w, final Task t) {
+		if(!(t instanceof AbstractTask) && t.done()) return;
+		// once the task is taken over, the worker is abandoned when it returns
+		if(!w.currentTask.compareAndSet(t, null)) return;
+		
+		// an AbstractTask that has just finished its execution is not marked as
+		// timed out, so a task is never reported as both done and timed out
+		final boolean b = t instanceof AbstractTask ? ((AbstractTask<?>)t).setTimedOut() : true;
+		
+		Executor e;
+		final String s;
+		synchronized(this) {
+			e = executor;
+			s = name + "-" + (workerCount + ++workerSerial);
+		}
+		TaskExecutors.execute(e, s + "-timeout", new Runnable() {
+			public void
+			run() { timedOut(t, b, s); }
+		});
+	}
+	
+	/**
+	 * Starts a replacement worker, if the queue is not cancelled, so that the
+	 * rest of the queue is not blocked by the timed out task, and stops the task.
+	 * @param b Specifies whether the task has actually timed out
+	 * or has finished just before being taken over.
+	 */
+	private void
+	timedOut(Task t, boolean b, String workerName) {
+		if(!isCancelled()) startWorker(workerName);
+		if(!b) return;
+		
+		TaskQueueMetrics m = metrics;
+		if(m != null) m.taskTimedOut();
+		t.stop();
+		if(hasListeners()) fireTaskQueueEvent(new TaskQueueEvent(t, TaskQueueEvent.ID.TIMED_OUT));
 	}
 	
 	/**
@@ -201,41 +1624,55 @@ public class TaskQueue {
 	
 	/**
 	 * Stops the task queue and cancels the execution of all pending tasks.
-	 * Note that this method does not remove the pending tasks from the queue.
+	 * The tasks that are currently running are {@link Task#stop stopped}.
+	 * Note that this method does not remove the pending tasks from the queue,
+	 * but the futures of the pending {@link #submit submitted} tasks are cancelled.
 	 * @see #removePendingTasks
 	 * @see #stop
 	 */
-	public synchronized void
+	public void
 	cancel() {
 		cancel = true;
 		stop();
+		for(Task t : getRunningTasks()) t.stop();
+		
+		// the pending tasks won't be executed unless the queue is restarted
+		if(!submittedTasks.isEmpty()) {
+			for(Task t : getPendingTasks()) cancelFuture(t);
+		}
 	}
 	
 	/**
 	 * Determines whether the task queue is cancelled.
 	 * @return <code>true</code> if the task queue is cancelled, <code>false</code> otherwise.
 	 */
-	public synchronized boolean
+	public boolean
 	isCancelled() { return cancel; }
 	
 	/**
-	 * Stops the task queue.
+	 * Stops the task queue and cancels its {@link #schedule schedules}.
 	 * Note that the already queued tasks will be processed. Use {@link #isIdle}
 	 * method to determine whether all tasks in the queue are processed.
 	 * @see #cancel
 	 */
-	public synchronized void
+	public void
 	stop() {
-		stop = true;
-		fireTaskQueueEvent(new TaskQueueEvent(this, TaskQueueEvent.ID.STOPPED));
-		notifyAll();
+		synchronized(this) {
+			stop = true;
+			// queued like STARTED, so that the two are delivered in the order of the transitions
+			if(hasListeners()) stateEvents.add(new TaskQueueEvent(this, TaskQueueEvent.ID.STOPPED));
+		}
+		cancelSchedules();
+		fireStateEvents();
+		wakeUpAllWorkers();
+		wakeUpProducers();
 	}
 	
 	/**
 	 * Determines whether this task queue is stopped.
 	 * @return <code>true</code> if the task queue is stopped, <code>false</code> otherwise.
 	 */
-	public synchronized boolean
+	public boolean
 	isStopped() { return stop; }
 	
 	/**
@@ -254,81 +1691,365 @@ public class TaskQueue {
 	 * if the queue is empty doesn't mean that there is no running task at that moment.
 	 * @return <code>true</code> if the queue is empty, <code>false</code> otherwise.
 	 * @see #isIdle
-	 * @see #getRunningTask
+	 * @see #getRunningTasks
 	 */
-	public synchronized boolean
-	isEmpty() { return taskQueue.isEmpty(); }
+	public boolean
+	isEmpty() { return pendingCount.get() == 0; }
 	
 	/**
 	 * Determines whether the queue is in idle state. Idle state means that the queue
-	 * is empty and there is no running task.
+	 * is empty and there are no running tasks.
 	 * @return <code>true</code> if the queue is in idle state, <code>false</code> otherwise.
 	 */
-	public synchronized boolean
+	public boolean
 	isIdle() { return idle; }
 	
 	/**
 	 * Gets the number of pending tasks.
 	 * @return The number of pending tasks.
 	 */
-	public synchronized int
-	getPendingTaskCount() { return taskQueue.size(); }
+	public int
+	getPendingTaskCount() { return pendingCount.get(); }
 	
 	/**
 	 * Gets a list of all tasks in the queue pending for execution.
 	 * @return An array containing all tasks pending for execution.
 	 */
-	public synchronized Task[]
-	getPendingTasks() { return taskQueue.toArray(new Task[0]); }
+	public Task[]
+	getPendingTasks() {
+		Entry[] entries;
+		synchronized(orderLock) { entries = getOrderedEntries(); }
+		
+		Task[] tasks = new Task[entries.length];
+		for(int i = 0; i < entries.length; i++) tasks[i] = entries[i].task;
+		return tasks;
+	}
 	
 	/**
-	 * Gets the currently running task.
+	 * Gets the currently running task. If the queue has more than one worker
+	 * and several tasks are currently running, the one that was fetched first is returned.
 	 * @return The task that is currently running or <code>null</code>
 	 * if there is no running task at this moment.
+	 * @see #getRunningTasks
+	 */
+	public Task
+	getRunningTask() {
+		synchronized(runningTasks) {
+			return runningTasks.isEmpty() ? null : runningTasks.get(0);
+		}
+	}
+	
+	/**
+	 * Gets all tasks that are currently running, in the order they were fetched.
+	 * @return An array containing all tasks that are currently running.
+	 * @see #setWorkerCount
 	 */
-	public synchronized Task
-	getRunningTask() { return currentTask; }
+	public Task[]
+	getRunningTasks() {
+		synchronized(runningTasks) { return runningTasks.toArray(new Task[0]); }
+	}
 	
 	/** Removes all pending tasks. */
-	public synchronized void
-	removePendingTasks() { taskQueue.clear(); }
+	public void
+	removePendingTasks() {
+		ArrayList<Entry> scheduled = new ArrayList<Entry>();
+		ArrayList<Task> submitted = new ArrayList<Task>();
+		int n = 0;
+		
+		synchronized(orderLock) {
+			for(Entry e = taskQueue.poll(); e != null; e = taskQueue.poll()) {
+				if(e.removed) continue;
+				pendingCount.decrementAndGet();
+				n++;
+				if(e.schedule != null) scheduled.add(e);
+				if(!submittedTasks.isEmpty()) submitted.add(e.task);
+			}
+			
+			if(orderedTasks != null) {
+				for(Entry e : orderedTasks) {
+					if(e.removed) continue;
+					pendingCount.decrementAndGet();
+					n++;
+					if(e.schedule != null) scheduled.add(e);
+					if(!submittedTasks.isEmpty()) submitted.add(e.task);
+				}
+				orderedTasks.clear();
+			}
+			
+			coalescingIndex.clear();
+		}
+		updateFilledState();
+		updateIdleState();
+		pendingCountDecreased(pendingCount.get());
+		
+		TaskQueueMetrics m = metrics;
+		if(m != null) m.tasksDiscarded(n);
+		for(Entry e : scheduled) e.schedule.taskDiscarded(e.task);
+		for(Task t : submitted) cancelFuture(t);
+	}
 	
 	/**
 	 * Removes the specified task from the queue.
+	 * If the task is currently running, it is {@link Task#stop stopped}.
 	 * @param t The task to be removed.
-	 * @return <code>true</code> if the queue contains the specified element,
-	 * <code>false</code> otherwise.
+	 * @return <code>true</code> if the queue contains the specified element
+	 * or the task is currently running, <code>false</code> otherwise.
 	 */
-	public synchronized boolean
-	removeTask(Task t) { return taskQueue.remove(t); }
+	public boolean
+	removeTask(Task t) {
+		Entry e = removeEntry(t);
+		if(e == null) {
+			boolean b;
+			synchronized(runningTasks) { b = runningTasks.contains(t); }
+			if(b) t.stop();
+			return b;
+		}
+		
+		int n = pendingCount.decrementAndGet();
+		if(n == 0) {
+			updateFilledState();
+			updateIdleState();
+		}
+		pendingCountDecreased(n);
+		
+		discarded(t, e.schedule);
+		return true;
+	}
 	
+	/**
+	 * Removes the pending entry of the specified task.
+	 * @return The removed entry or <code>null</code> if the task is not pending.
+	 */
+	private Entry
+	removeEntry(Task t) {
+		Object key = indexKeys ? t.getCoalescingKey() : null;
+		
+		synchronized(orderLock) {
+			if(key != null) {
+				Entry e = coalescingIndex.get(key);
+				if(e != null && e.task == t) {
+					e.removed = true;
+					coalescingIndex.remove(key);
+					return e;
+				}
+			}
+			
+			for(Entry e : taskQueue) {
+				if(e.task == t && !e.removed && taskQueue.remove(e)) {
+					if(e.key != null) coalescingIndex.remove(e.key, e);
+					return e;
+				}
+			}
+			
+			if(orderedTasks == null) return null;
+			for(Entry e : orderedTasks) {
+				if(e.task == t && !e.removed) {
+					if(e.key != null) coalescingIndex.remove(e.key, e);
+					return orderedTasks.remove(e) ? e : null;
+				}
+			}
+			return null;
+		}
+	}
 	
 	private static int serial = 0;
 	
 	private static synchronized int
 	getSerialNumber() { return ++serial; }
 	
-	private final Vector<TaskQueueListener> listenerList = new Vector<TaskQueueListener>();
+	private final ListenerRegistry<TaskQueueListener> listenerList =
+		new ListenerRegistry<TaskQueueListener>();
+	
+	private final ListenerRegistry<TaskQueueListener> coalescingListenerList =
+		new ListenerRegistry<TaskQueueListener>();
+	
+	private final EventCoalescer eventCoalescer = new EventCoalescer();
+	private volatile long eventCoalescingInterval = 50;
 	
 	/**
 	 * Registers the specified listener for receiving event messages.
+	 * The listener is notified asynchronously on the UI thread.
 	 * @param l The <code>TaskListener</code> to register.
 	 */
 	public void
-	addTaskQueueListener(TaskQueueListener l) { listenerList.add(l); }
+	addTaskQueueListener(TaskQueueListener l) {
+		addTaskQueueListener(l, DeliveryPolicy.UI_THREAD);
+	}
+	
+	/**
+	 * Registers the specified listener for receiving event messages
+	 * using the specified delivery policy. Note that with
+	 * {@link DeliveryPolicy#UI_THREAD_AND_WAIT} policy the threads adding
+	 * tasks to the queue may be blocked until the listener returns.
+	 * The listeners are never notified while a lock of the queue is held. The
+	 * events about state changes (<code>FILLED</code>, <code>EMPTY</code>,
+	 * <code>IDLE</code>, <code>NOT_IDLE</code> and the watermark events) are
+	 * delivered in the order of the changes, and when several threads change
+	 * the state at the same time, they may be delivered by any of them.
+	 * @param l The <code>TaskQueueListener</code> to register.
+	 * @param policy Specifies on which thread the listener should be notified.
+	 */
+	public void
+	addTaskQueueListener(TaskQueueListener l, DeliveryPolicy policy) {
+		if(policy == null) throw new IllegalArgumentException("policy should be non-null");
+		listenerList.add(l, policy);
+	}
+	
+	/**
+	 * Registers the specified listener for receiving event messages.
+	 * A coalescing listener receives the events fired during each
+	 * {@link #setEventCoalescingInterval coalescing interval} with a single
+	 * UI thread call. Only the latest event of each type is delivered, and
+	 * {@link TaskQueueEvent#getCount} gives the number of events it represents.
+	 * The events are delivered in the order of their latest occurrence,
+	 * so the last delivered state event reflects the current state of the queue.
+	 * @param l The <code>TaskQueueListener</code> to register.
+	 * @param coalescing Specifies whether the events should be coalesced.
+	 */
+	public void
+	addTaskQueueListener(TaskQueueListener l, boolean coalescing) {
+		if(coalescing) coalescingListenerList.add(l);
+		else addTaskQueueListener(l);
+	}
 	
 	/**
 	 * Removes the specified listener.
 	 * @param l The <code>TaskQueueListener</code> to remove.
 	 */
 	public void
-	removeTaskQueueListener(TaskQueueListener l) { listenerList.remove(l); }
+	removeTaskQueueListener(TaskQueueListener l) {
+		if(!listenerList.remove(l)) coalescingListenerList.remove(l);
+	}
 	
-	private synchronized void
-	fireTaskQueueEvent(final TaskQueueEvent e) {
-		PDUtils.runOnUiThread(new Runnable() {
-			public void
-			run() { for(TaskQueueListener l : listenerList) l.stateChanged(e); }
-		});
+	/**
+	 * Gets the interval at which the events are delivered to the coalescing listeners.
+	 * @return The coalescing interval in milliseconds.
+	 * @see #addTaskQueueListener(TaskQueueListener, boolean)
+	 */
+	public long
+	getEventCoalescingInterval() { return eventCoalescingInterval; }
+	
+	/**
+	 * Sets the interval at which the events are delivered to the coalescing listeners.
+	 * The default value is 50 milliseconds.
+	 * @param millis The coalescing interval in milliseconds.
+	 * @throws IllegalArgumentException If <code>millis</code> is negative.
+	 * @see #addTaskQueueListener(TaskQueueListener, boolean)
+	 */
+	public void
+	setEventCoalescingInterval(long millis) {
+		if(millis < 0) throw new IllegalArgumentException("Negative interval: " + millis);
+		eventCoalescingInterval = millis;
+	}
+	
+	/** Collects the events for the coalescing listeners. */
+	private class EventCoalescer implements Runnable {
+		private final TaskQueueEvent.ID[] ids = TaskQueueEvent.ID.values();
+		private final Object[] sources = new Object[ids.length];
+		private final int[] counts = new int[ids.length];
+		private final long[] stamps = new long[ids.length];
+		private long stamp = 0;
+		private boolean scheduled = false;
+		
+		synchronized void
+		add(TaskQueueEvent e) {
+			int i = e.getEventID().ordinal();
+			sources[i] = e.getSource();
+			counts[i]++;
+			stamps[i] = ++stamp;
+			
+			if(scheduled) return;
+			scheduled = true;
+			TaskExecutors.timer().schedule (
+				this, eventCoalescingInterval, TimeUnit.MILLISECONDS
+			);
+		}
+		
+		/** Delivers the collected events. Invoked from the timer thread. */
+		public void
+		run() {
+			ArrayList<TaskQueueEvent> events = new ArrayList<TaskQueueEvent>();
+			
+			synchronized(this) {
+				scheduled = false;
+				for(;;) {
+					// the event with the earliest occurrence goes first
+					int k = -1;
+					for(int i = 0; i < ids.length; i++) {
+						if(counts[i] == 0) continue;
+						if(k == -1 || stamps[i] < stamps[k]) k = i;
+					}
+					if(k == -1) break;
+					
+					events.add(new TaskQueueEvent(sources[k], ids[k], counts[k]));
+					sources[k] = null;
+					counts[k] = 0;
+				}
+			}
+			
+			final TaskQueueEvent[] a = events.toArray(new TaskQueueEvent[0]);
+			PDUtils.runOnUiThread(new Runnable() {
+				public void
+				run() {
+					ListenerRegistry.Snapshot<TaskQueueListener> s =
+						coalescingListenerList.getSnapshot();
+					
+					for(TaskQueueEvent e : a) {
+						for(int i = 0; i < s.size(); i++) s.get(i).stateChanged(e);
+					}
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Determines whether there are registered listeners. Should be checked
+	 * before creating events, so that no events are allocated without listeners.
+	 */
+	private boolean
+	hasListeners() { return !listenerList.isEmpty() || !coalescingListenerList.isEmpty(); }
+	
+	private void
+	fireTaskQueueEvent(TaskQueueEvent e) {
+		if(!coalescingListenerList.isEmpty()) eventCoalescer.add(e);
+		if(listenerList.isEmpty()) return;
+		
+		fireTaskQueueEvents0(new TaskQueueEvent[] { e });
+	}
+	
+	/** Delivers the specified events with a single command per delivery policy. */
+	private void
+	fireTaskQueueEvents(List<TaskQueueEvent> events) {
+		if(events.size() == 1) {
+			fireTaskQueueEvent(events.get(0));
+			return;
+		}
+		
+		if(!coalescingListenerList.isEmpty()) {
+			for(TaskQueueEvent e : events) eventCoalescer.add(e);
+		}
+		if(listenerList.isEmpty()) return;
+		
+		fireTaskQueueEvents0(events.toArray(new TaskQueueEvent[0]));
+	}
+	
+	private void
+	fireTaskQueueEvents0(final TaskQueueEvent[] events) {
+		for(final DeliveryPolicy p : DeliveryPolicy.values()) {
+			if(!listenerList.hasListeners(p)) continue;
+			
+			p.deliver(new Runnable() {
+				public void
+				run() {
+					ListenerRegistry.Snapshot<TaskQueueListener> s = listenerList.getSnapshot();
+					
+					for(TaskQueueEvent e : events) {
+						for(int i = 0; i < s.size(); i++) {
+							if(s.getPolicy(i) == p) s.get(i).stateChanged(e);
+						}
+					}
+				}
+			});
+		}
 	}
 }
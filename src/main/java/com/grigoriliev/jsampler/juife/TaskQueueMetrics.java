@@ -0,0 +1,356 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+
+package com.grigoriliev.jsampler.juife;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+
+/**
+ * Collects statistics about the tasks processed by a {@link TaskQueue} - the number
+ * of added, discarded, dropped and executed tasks, the time the tasks spend waiting in the
+ * queue and the time spent in their execution. The statistics can optionally be
+ * collected per {@link Task#getTitle task title}. The counters are updated without
+ * locking and an immutable {@link Snapshot snapshot} of them can be taken at any time.
+ * @see TaskQueue#setMetricsEnabled
+ * @author Grigor Iliev
+ */
+public final class TaskQueueMetrics {
+	/** The maximum number of task titles for which separate statistics are collected. */
+	public static final int MAX_TITLES = 256;
+	
+	private static final LongBinaryOperator MAX = new LongBinaryOperator() {
+		public long
+		applyAsLong(long left, long right) { return Math.max(left, right); }
+	};
+	
+	private final TaskQueue queue;
+	private final long startTime = System.nanoTime();
+	
+	private final LongAdder addedTasks = new LongAdder();
+	private final LongAdder discardedTasks = new LongAdder();
+	private final LongAdder droppedTasks = new LongAdder();
+	private final LongAdder rejectedTasks = new LongAdder();
+	private final LongAdder completedTasks = new LongAdder();
+	private final LongAdder failedTasks = new LongAdder();
+	private final LongAdder timedOutTasks = new LongAdder();
+	private final LongAccumulator peakPendingTasks = new LongAccumulator(MAX, 0);
+	
+	private final LatencyHistogram waitTime = new LatencyHistogram();
+	private final LatencyHistogram executionTime = new LatencyHistogram();
+	
+	private volatile boolean perTitle = false;
+	private final ConcurrentHashMap<String, TitleMetrics> titleMetrics =
+		new ConcurrentHashMap<String, TitleMetrics>();
+	
+	TaskQueueMetrics(TaskQueue queue) { this.queue = queue; }
+	
+	/**
+	 * Determines whether statistics are collected separately for each task title.
+	 * @return <code>true</code> if statistics are collected
+	 * per task title, <code>false</code> otherwise.
+	 */
+	public boolean
+	isPerTitleEnabled() { return perTitle; }
+	
+	/**
+	 * Determines whether statistics should be collected separately for each
+	 * task title. The statistics are collected for up to {@link #MAX_TITLES}
+	 * distinct titles and the tasks without title are not taken into account.
+	 * @param b Specifies whether statistics should be collected per task title.
+	 */
+	public void
+	setPerTitleEnabled(boolean b) {
+		perTitle = b;
+		if(!b) titleMetrics.clear();
+	}
+	
+	/**
+	 * Gets a snapshot of the current statistics.
+	 * @return A snapshot of the current statistics.
+	 */
+	public Snapshot
+	getSnapshot() {
+		Map<String, TitleSnapshot> m = Collections.emptyMap();
+		if(!titleMetrics.isEmpty()) {
+			m = new HashMap<String, TitleSnapshot>();
+			for(Map.Entry<String, TitleMetrics> e : titleMetrics.entrySet()) {
+				TitleMetrics tm = e.getValue();
+				m.put(e.getKey(), new TitleSnapshot (
+					tm.waitTime.getSnapshot(), tm.executionTime.getSnapshot()
+				));
+			}
+			m = Collections.unmodifiableMap(m);
+		}
+		
+		return new Snapshot(this, m);
+	}
+	
+	void
+	taskAdded(int pendingTasks) {
+		addedTasks.increment();
+		peakPendingTasks.accumulate(pendingTasks);
+	}
+	
+	void
+	tasksDiscarded(int n) { discardedTasks.add(n); }
+	
+	void
+	taskDropped() { droppedTasks.increment(); }
+	
+	void
+	taskRejected() { rejectedTasks.increment(); }
+	
+	void
+	taskTimedOut() { timedOutTasks.increment(); }
+	
+	void
+	taskFetched(Task t, long waitNanos) {
+		waitTime.record(waitNanos);
+		TitleMetrics tm = getTitleMetrics(t);
+		if(tm != null) tm.waitTime.record(waitNanos);
+	}
+	
+	void
+	taskDone(Task t, long executionNanos) {
+		completedTasks.increment();
+		if(t.doneWithErrors()) failedTasks.increment();
+		executionTime.record(executionNanos);
+		TitleMetrics tm = getTitleMetrics(t);
+		if(tm != null) tm.executionTime.record(executionNanos);
+	}
+	
+	private TitleMetrics
+	getTitleMetrics(Task t) {
+		if(!perTitle) return null;
+		String title = t.getTitle();
+		if(title == null) return null;
+		
+		TitleMetrics tm = titleMetrics.get(title);
+		if(tm != null || titleMetrics.size() >= MAX_TITLES) return tm;
+		
+		tm = new TitleMetrics();
+		TitleMetrics tm2 = titleMetrics.putIfAbsent(title, tm);
+		return tm2 != null ? tm2 : tm;
+	}
+	
+	private static class TitleMetrics {
+		final LatencyHistogram waitTime = new LatencyHistogram();
+		final LatencyHistogram executionTime = new LatencyHistogram();
+	}
+	
+	/** An immutable snapshot of the statistics of a task queue. */
+	public static final class Snapshot {
+		private final long timestamp = System.nanoTime();
+		private final long startTime;
+		private final long addedTasks;
+		private final long discardedTasks;
+		private final long droppedTasks;
+		private final long rejectedTasks;
+		private final long completedTasks;
+		private final long failedTasks;
+		private final long timedOutTasks;
+		private final int pendingTasks;
+		private final long peakPendingTasks;
+		private final LatencyHistogram.Snapshot waitTime;
+		private final LatencyHistogram.Snapshot executionTime;
+		private final Map<String, TitleSnapshot> titleSnapshots;
+		
+		private
+		Snapshot(TaskQueueMetrics m, Map<String, TitleSnapshot> titleSnapshots) {
+			startTime = m.startTime;
+			addedTasks = m.addedTasks.sum();
+			discardedTasks = m.discardedTasks.sum();
+			droppedTasks = m.droppedTasks.sum();
+			rejectedTasks = m.rejectedTasks.sum();
+			completedTasks = m.completedTasks.sum();
+			failedTasks = m.failedTasks.sum();
+			timedOutTasks = m.timedOutTasks.sum();
+			pendingTasks = m.queue.getPendingTaskCount();
+			peakPendingTasks = m.peakPendingTasks.get();
+			waitTime = m.waitTime.getSnapshot();
+			executionTime = m.executionTime.getSnapshot();
+			this.titleSnapshots = titleSnapshots;
+		}
+		
+		/**
+		 * Gets the time at which this snapshot was taken.
+		 * @return The value of <code>System.nanoTime()</code> at the time this snapshot was taken.
+		 */
+		public long
+		getTimestamp() { return timestamp; }
+		
+		/**
+		 * Gets the number of tasks accepted by the queue.
+		 * @return The number of tasks accepted by the queue.
+		 */
+		public long
+		getAddedTaskCount() { return addedTasks; }
+		
+		/**
+		 * Gets the number of tasks that have been removed from the queue
+		 * or discarded due to coalescing without being executed.
+		 * @return The number of discarded tasks.
+		 * @see #getDroppedTaskCount
+		 */
+		public long
+		getDiscardedTaskCount() { return discardedTasks; }
+		
+		/**
+		 * Gets the number of tasks that have been dropped without being executed
+		 * because the queue was full. These tasks are not counted as added,
+		 * unless they have been dropped after being enqueued.
+		 * @return The number of dropped tasks.
+		 * @see TaskQueue.OverflowPolicy
+		 */
+		public long
+		getDroppedTaskCount() { return droppedTasks; }
+		
+		/**
+		 * Gets the number of tasks that have been rejected because the queue was full.
+		 * @return The number of rejected tasks.
+		 * @see TaskQueue.OverflowPolicy#REJECT
+		 */
+		public long
+		getRejectedTaskCount() { return rejectedTasks; }
+		
+		/**
+		 * Gets the number of executed tasks, including the failed ones.
+		 * @return The number of executed tasks.
+		 */
+		public long
+		getCompletedTaskCount() { return completedTasks; }
+		
+		/**
+		 * Gets the number of executed tasks that have finished with errors.
+		 * @return The number of failed tasks.
+		 */
+		public long
+		getFailedTaskCount() { return failedTasks; }
+		
+		/**
+		 * Gets the number of tasks that have exceeded their timeout.
+		 * @return The number of timed out tasks.
+		 */
+		public long
+		getTimedOutTaskCount() { return timedOutTasks; }
+		
+		/**
+		 * Gets the number of pending tasks at the time this snapshot was taken.
+		 * @return The number of pending tasks.
+		 */
+		public int
+		getPendingTaskCount() { return pendingTasks; }
+		
+		/**
+		 * Gets the highest number of pending tasks observed after adding a task.
+		 * @return The highest number of pending tasks.
+		 */
+		public long
+		getPeakPendingTaskCount() { return peakPendingTasks; }
+		
+		/**
+		 * Gets the distribution of the time the tasks spent
+		 * in the queue before they were fetched for execution.
+		 * @return The queue wait time histogram.
+		 */
+		public LatencyHistogram.Snapshot
+		getWaitTime() { return waitTime; }
+		
+		/**
+		 * Gets the distribution of the execution time of the tasks. The tasks executed
+		 * as a single {@link BatchTask batch} are recorded with the execution time of the batch.
+		 * @return The execution time histogram.
+		 */
+		public LatencyHistogram.Snapshot
+		getExecutionTime() { return executionTime; }
+		
+		/**
+		 * Gets the average number of tasks executed per second
+		 * since the metrics collection was enabled.
+		 * @return The number of tasks executed per second.
+		 */
+		public double
+		getThroughput() { return getThroughput(completedTasks, timestamp - startTime); }
+		
+		/**
+		 * Gets the average number of tasks executed per second
+		 * since the specified earlier snapshot was taken.
+		 * @param earlier A snapshot of the same metrics taken earlier.
+		 * @return The number of tasks executed per second.
+		 */
+		public double
+		getThroughput(Snapshot earlier) {
+			return getThroughput (
+				completedTasks - earlier.completedTasks, timestamp - earlier.timestamp
+			);
+		}
+		
+		private static double
+		getThroughput(long tasks, long nanos) {
+			return nanos <= 0 ? 0 : tasks * 1e9 / nanos;
+		}
+		
+		/**
+		 * Gets the statistics collected separately for each task title.
+		 * @return An unmodifiable map of the task titles to their statistics,
+		 * which is empty if statistics are not collected per task title.
+		 * @see TaskQueueMetrics#setPerTitleEnabled
+		 */
+		public Map<String, TitleSnapshot>
+		getTitleSnapshots() { return titleSnapshots; }
+	}
+	
+	/** An immutable snapshot of the statistics of the tasks with the same title. */
+	public static final class TitleSnapshot {
+		private final LatencyHistogram.Snapshot waitTime;
+		private final LatencyHistogram.Snapshot executionTime;
+		
+		private
+		TitleSnapshot(LatencyHistogram.Snapshot waitTime, LatencyHistogram.Snapshot executionTime) {
+			this.waitTime = waitTime;
+			this.executionTime = executionTime;
+		}
+		
+		/**
+		 * Gets the distribution of the time the tasks spent
+		 * in the queue before they were fetched for execution.
+		 * @return The queue wait time histogram.
+		 */
+		public LatencyHistogram.Snapshot
+		getWaitTime() { return waitTime; }
+		
+		/**
+		 * Gets the distribution of the execution time of the tasks.
+		 * @return The execution time histogram.
+		 */
+		public LatencyHistogram.Snapshot
+		getExecutionTime() { return executionTime; }
+	}
+}
@@ -0,0 +1,224 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+
+package com.grigoriliev.jsampler.juife;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import com.grigoriliev.jsampler.juife.event.TaskEvent;
+import com.grigoriliev.jsampler.juife.event.TaskListener;
+
+
+/**
+ * Represents a delayed or periodic addition of tasks to a {@link TaskQueue}.
+ * All schedules share a single timer thread, so the number of schedules does
+ * not affect the number of threads. The timer thread only triggers the additions;
+ * the tasks are created and added to the queue by a {@link TaskExecutors#sharedPool
+ * pooled thread}, so a slow factory or queue never delays the other schedules.
+ * @see TaskQueue#schedule
+ * @see TaskQueue#scheduleAtFixedRate
+ * @see TaskQueue#scheduleWithFixedDelay
+ * @author Grigor Iliev
+ */
+public final class TaskSchedule {
+	private final TaskQueue queue;
+	private final Supplier<? extends Task> factory;
+	private final long period;
+	private final boolean fixedRate;
+	
+	/** The pending timer command. Guarded by <code>this</code>. */
+	private ScheduledFuture<?> future = null;
+	
+	/**
+	 * In fixed-delay mode, the last added task which is not done yet.
+	 * Guarded by <code>this</code>.
+	 */
+	private Task currentTask = null;
+	
+	private volatile boolean cancelled = false;
+	
+	/** Set while a task is being created and added to the queue. */
+	private final AtomicBoolean adding = new AtomicBoolean(false);
+	
+	private final TaskListener taskListener = new TaskListener() {
+		public void
+		taskPerformed(TaskEvent e) { taskDone((Task)e.getSource()); }
+	};
+	
+	private final Runnable tick = new Runnable() {
+		public void
+		run() { tick(); }
+	};
+	
+	private final Runnable addTask = new Runnable() {
+		public void
+		run() {
+			try { addTask(); }
+			finally { adding.set(false); }
+		}
+	};
+	
+	/**
+	 * Creates a new schedule.
+	 * @param period The period or the delay between the tasks
+	 * in milliseconds, or <code>0</code> for a one-shot schedule.
+	 */
+	TaskSchedule(TaskQueue queue, Supplier<? extends Task> factory, long period, boolean fixedRate) {
+		if(factory == null) throw new IllegalArgumentException("factory should be non-null");
+		if(period < 0) throw new IllegalArgumentException("Negative period: " + period);
+		
+		this.queue = queue;
+		this.factory = factory;
+		this.period = period;
+		this.fixedRate = fixedRate;
+	}
+	
+	/** Starts the schedule with the specified initial delay in milliseconds. */
+	synchronized void
+	start(long delay) {
+		if(delay < 0) throw new IllegalArgumentException("Negative delay: " + delay);
+		if(cancelled) return;
+		
+		if(fixedRate && period > 0) {
+			future = TaskExecutors.timer().scheduleAtFixedRate (
+				tick, delay, period, TimeUnit.MILLISECONDS
+			);
+		} else {
+			future = TaskExecutors.timer().schedule(tick, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	/**
+	 * Gets the task queue to which this schedule adds tasks.
+	 * @return The task queue to which this schedule adds tasks.
+	 */
+	public TaskQueue
+	getTaskQueue() { return queue; }
+	
+	/**
+	 * Determines whether the tasks are added periodically.
+	 * @return <code>true</code> if this schedule is periodic,
+	 * <code>false</code> if it adds a single task.
+	 */
+	public boolean
+	isPeriodic() { return period > 0; }
+	
+	/**
+	 * Cancels this schedule. The tasks which are already added to the
+	 * queue are not affected. A schedule is also cancelled automatically
+	 * when the task queue is stopped.
+	 */
+	public void
+	cancel() {
+		cancelled = true;
+		queue.scheduleCancelled(this);
+		
+		ScheduledFuture<?> f;
+		synchronized(this) {
+			f = future;
+			future = null;
+			currentTask = null;
+		}
+		if(f != null) f.cancel(false);
+	}
+	
+	/**
+	 * Determines whether this schedule is cancelled.
+	 * @return <code>true</code> if this schedule is cancelled, <code>false</code> otherwise.
+	 */
+	public boolean
+	isCancelled() { return cancelled; }
+	
+	/**
+	 * Invoked from the timer thread when the next task should be added.
+	 * In fixed-rate mode the addition is skipped if the previous one is not finished yet.
+	 */
+	private void
+	tick() {
+		if(cancelled) return;
+		if(!adding.compareAndSet(false, true)) return;
+		TaskExecutors.sharedPool().execute(addTask);
+	}
+	
+	/** Creates the next task and adds it to the queue. Invoked from a pooled thread. */
+	private void
+	addTask() {
+		if(cancelled) return;
+		
+		boolean fixedDelay = period > 0 && !fixedRate;
+		Task t = factory.get();
+		if(t == null) {
+			if(fixedDelay) cancel();
+			return;
+		}
+		
+		if(fixedDelay) {
+			synchronized(this) { currentTask = t; }
+			
+			if(t instanceof AbstractTask) {
+				((AbstractTask<?>)t).addTaskListener(taskListener, DeliveryPolicy.SAME_THREAD);
+			} else {
+				t.addTaskListener(taskListener);
+			}
+		}
+		
+		try { queue.add(t, this); }
+		catch(IllegalStateException x) {
+			// the queue is stopped
+			cancel();
+		} catch(RejectedExecutionException x) {
+			taskDiscarded(t);
+		}
+	}
+	
+	/**
+	 * Invoked when a task added by this schedule is done.
+	 * In fixed-delay mode the next task is scheduled.
+	 */
+	private void
+	taskDone(Task t) {
+		t.removeTaskListener(taskListener);
+		scheduleNext(t);
+	}
+	
+	/**
+	 * Invoked by the task queue when a task added by this schedule
+	 * is removed from the queue or discarded due to coalescing or overflow.
+	 */
+	void
+	taskDiscarded(Task t) {
+		t.removeTaskListener(taskListener);
+		scheduleNext(t);
+	}
+	
+	private synchronized void
+	scheduleNext(Task t) {
+		if(cancelled || currentTask != t) return;
+		currentTask = null;
+		future = TaskExecutors.timer().schedule(tick, period, TimeUnit.MILLISECONDS);
+	}
+}
@@ -30,7 +30,8 @@ package com.grigoriliev.jsampler.juife.event;
 public interface TaskListener extends java.util.EventListener {
 	/**
 	 * Invoked to indicate that the task has been done.
-	 * This method is invoked only from the event-dispatching thread.
+	 * This method is invoked only from the event-dispatching thread,
+	 * unless the listener is registered with a different delivery policy.
 	 */
 	void taskPerformed(TaskEvent e);
 }
@@ -51,27 +51,61 @@ public class TaskQueueEvent extends java.util.EventObject {
 		
 		/**
 		 * Indicates that a new task has been fetched for execution from the queue.
-		 * @see TaskQueue#getRunningTask
+		 * The source of the event is the fetched task.
+		 * @see TaskQueue#getRunningTasks
 		 */
 		TASK_FETCHED,
 		
 		/**
-		 * Indicates that the current running task is done.
-		 * @see TaskQueue#getRunningTask
+		 * Indicates that a running task is done.
+		 * The source of the event is the task that is done.
+		 * @see TaskQueue#getRunningTasks
 		 */
-		TASK_DONE
+		TASK_DONE,
+		
+		/**
+		 * Indicates that the number of pending tasks has reached the high watermark.
+		 * @see TaskQueue#setWatermarks
+		 */
+		HIGH_WATERMARK,
+		
+		/**
+		 * Indicates that the number of pending tasks has dropped
+		 * to the low watermark after reaching the high watermark.
+		 * @see TaskQueue#setWatermarks
+		 */
+		LOW_WATERMARK,
+		
+		/**
+		 * Indicates that a running task has exceeded its timeout and has been stopped.
+		 * The source of the event is the timed out task. Note that a
+		 * <code>TASK_DONE</code> event is fired when the task actually returns.
+		 * @see TaskQueue#setTaskTimeout
+		 */
+		TIMED_OUT
 	}
 	
 	private final ID eventID;
+	private final int count;
 	
 	/**
 	 * Creates a new instance of <code>TaskQueueEvent</code>.
 	 * @param source The object that originated the event.
 	 * @param eventID The event ID.
 	 */
-	public TaskQueueEvent(Object source, ID eventID) {
+	public TaskQueueEvent(Object source, ID eventID) { this(source, eventID, 1); }
+	
+	/**
+	 * Creates a new instance of <code>TaskQueueEvent</code>,
+	 * which represents several coalesced events of the same type.
+	 * @param source The object that originated the latest of the coalesced events.
+	 * @param eventID The event ID.
+	 * @param count The number of coalesced events.
+	 */
+	public TaskQueueEvent(Object source, ID eventID, int count) {
 		super(source);
 		this.eventID = eventID;
+		this.count = count;
 	}
 	
 	/**
@@ -80,4 +114,15 @@ public class TaskQueueEvent extends java.util.EventObject {
 	 */
 	public ID
 	getEventID() { return eventID; }
+	
+	/**
+	 * Gets the number of events of this type that this event represents.
+	 * This number is greater than one only for the events delivered to
+	 * coalescing listeners, in which case the source of the event is
+	 * the source of the latest of the coalesced events.
+	 * @return The number of events this event represents.
+	 * @see TaskQueue#addTaskQueueListener(TaskQueueListener, boolean)
+	 */
+	public int
+	getCount() { return count; }
 }
@@ -29,7 +29,8 @@ package com.grigoriliev.jsampler.juife.event;
 public interface TaskQueueListener {
 	/**
 	 * Invoked to indicate that the state of a task queue is changed.
-	 * This method is invoked only from the event-dispatching thread.
+	 * This method is invoked only from the event-dispatching thread,
+	 * unless the listener is registered with a different delivery policy.
 	 */
 	void stateChanged(TaskQueueEvent e);
 }
@@ -23,11 +23,27 @@
 package com.grigoriliev.jsampler.juife.impl;
 
 import android.app.Activity;
+import android.os.Looper;
 
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A <code>PDUtilsImpl</code> which uses the main thread of the Android
+ * application as UI thread. It is available on the Dalvik and ART runtimes.
+ * The {@link #activity} field should be set before using <code>PDUtils</code>.
+ * @author Grigor Iliev
+ */
 public class AndroidPDUtilsImpl implements PDUtilsImpl {
 	/** Should be set before using <code>PDUtils</code> */
 	public static Activity activity = null;
 	
+	/**
+	 * Creates a new instance of <code>AndroidPDUtilsImpl</code>. The instance is normally
+	 * created by <code>PDUtils</code> and uses the {@link #activity} set at the time of each call.
+	 */
+	public
+	AndroidPDUtilsImpl() { }
+	
 	/**
 	 * Causes <code>r.run()</code> to be executed asynchronously on the UI thread.
 	 * This call returns immediately.
@@ -40,24 +56,98 @@ public class AndroidPDUtilsImpl implements PDUtilsImpl {
 	
 	/**
 	 * Causes <code>r.run()</code> to be executed synchronously on the UI thread.
-	 * This call blocks until <code>r.run()</code> returns.
+	 * This call blocks until <code>r.run()</code> returns. If the current thread
+	 * is the main thread, <code>r.run()</code> is invoked directly.
+	 * An exception thrown by <code>r.run()</code> is rethrown to the caller.
+	 * @throws InterruptedException If the calling thread is interrupted while
+	 * waiting. In this case <code>r</code> may still be executed later.
 	 */
 	public void
-	runOnUiThreadAndWait(final Runnable r) throws Exception {
+	runOnUiThreadAndWait(Runnable r) throws Exception {
 		if(activity == null) throw new UnsupportedOperationException("'activity' field should be set before using this method");
 		
-		Runnable run = new Runnable() {
-			public void run() {
-				try { r.run(); }
-				catch(Throwable t) { t.printStackTrace(); }
-				
-				synchronized(this) { this.notify(); }
+		if(isUiThread()) {
+			r.run();
+			return;
+		}
+		
+		Latch l = latch.get();
+		l.reset(r);
+		activity.runOnUiThread(l);
+		
+		try { l.await(); }
+		catch(InterruptedException x) {
+			// the latch may still be posted, so it can't be reused
+			latch.remove();
+			throw x;
+		}
+	}
+	
+	/** Determines whether the current thread is the main thread. */
+	public boolean
+	isUiThread() { return Looper.myLooper() == Looper.getMainLooper(); }
+	
+	public String
+	getName() { return "android"; }
+	
+	/** Determines whether the current runtime is Android. */
+	public boolean
+	isAvailable() {
+		String s = System.getProperty("java.vm.name");
+		return s != null && s.toLowerCase().contains("dalvik");
+	}
+	
+	public int
+	getPriority() { return 30; }
+	
+	/**
+	 * The latch of each thread, which is reused by all its
+	 * calls to <code>runOnUiThreadAndWait</code>.
+	 */
+	private static final ThreadLocal<Latch> latch = new ThreadLocal<Latch>() {
+		protected Latch
+		initialValue() { return new Latch(); }
+	};
+	
+	/**
+	 * Runs a runnable on the main thread on behalf of a waiting thread
+	 * and unparks the thread when done.
+	 */
+	private static final class Latch implements Runnable {
+		private final Thread waiter = Thread.currentThread();
+		private Runnable task = null;
+		private Throwable error = null;
+		private volatile boolean done = false;
+		
+		void
+		reset(Runnable r) {
+			task = r;
+			error = null;
+			done = false;
+		}
+		
+		public void
+		run() {
+			try { task.run(); }
+			catch(Throwable t) { error = t; }
+			finally {
+				task = null;
+				done = true;
+				LockSupport.unpark(waiter);
 			}
-		};
+		}
 		
-		synchronized(run) {
-			activity.runOnUiThread(run);
-			run.wait();
+		void
+		await() throws Exception {
+			while(!done) {
+				LockSupport.park(this);
+				if(!done && Thread.interrupted()) throw new InterruptedException();
+			}
+			
+			Throwable t = error;
+			error = null;
+			if(t instanceof Exception) throw (Exception)t;
+			if(t instanceof Error) throw (Error)t;
 		}
 	}
 }
@@ -22,7 +22,19 @@
 
 package com.grigoriliev.jsampler.juife.impl;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * A <code>PDUtilsImpl</code> which uses the Swing event dispatch thread as UI thread.
+ * It is available when Swing is present and the environment is not headless.
+ * @author Grigor Iliev
+ */
 public class DefaultPDUtilsImpl implements PDUtilsImpl {
+	private static final String SWING_UTILITIES = "javax.swing.SwingUtilities";
+	
 	/**
 	 * Causes <code>r.run()</code> to be executed asynchronously on the UI thread.
 	 * This call returns immediately.
@@ -30,26 +42,99 @@ public class DefaultPDUtilsImpl implements PDUtilsImpl {
 	public void
 	runOnUiThread(Runnable r) {
 		try {
-			Class.forName("javax.swing.SwingUtilities")
-				.getMethod("invokeLater", Runnable.class)
-				.invoke(null, r);
-		} catch (Exception e) {
-			throw new RuntimeException(e);
+			Swing.invokeLater.invokeExact(r);
+		} catch(RuntimeException | Error e) {
+			throw e;
+		} catch(Throwable t) {
+			throw new RuntimeException(t);
 		}
 	}
 	
 	/**
 	 * Causes <code>r.run()</code> to be executed synchronously on the UI thread.
-	 * This call blocks until <code>r.run()</code> returns.
+	 * This call blocks until <code>r.run()</code> returns. If the current thread
+	 * is the event dispatch thread, <code>r.run()</code> is invoked directly.
+	 * An exception thrown by <code>r.run()</code> is rethrown to the caller.
 	 */
 	public void
 	runOnUiThreadAndWait(Runnable r) throws Exception {
+		if(isUiThread()) {
+			r.run();
+			return;
+		}
+		
+		try {
+			Swing.invokeAndWait.invokeExact(r);
+		} catch(InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof Exception) throw (Exception)cause;
+			if(cause instanceof Error) throw (Error)cause;
+			throw e;
+		} catch(Exception | Error e) {
+			throw e;
+		} catch(Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+	
+	/** Determines whether the current thread is the event dispatch thread. */
+	public boolean
+	isUiThread() {
+		try {
+			return (boolean)Swing.isEventDispatchThread.invokeExact();
+		} catch(RuntimeException | Error e) {
+			throw e;
+		} catch(Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+	
+	public String
+	getName() { return "swing"; }
+	
+	/**
+	 * Determines whether Swing is present and the environment is not headless.
+	 * This check doesn't initialize the AWT toolkit.
+	 */
+	public boolean
+	isAvailable() {
 		try {
-			Class.forName("javax.swing.SwingUtilities")
-				.getMethod("invokeAndWait", Runnable.class)
-				.invoke(null, r);
-		} catch (Exception e) {
-			throw new RuntimeException(e);
+			ClassLoader cl = DefaultPDUtilsImpl.class.getClassLoader();
+			Class.forName(SWING_UTILITIES, false, cl);
+			Object headless = Class.forName("java.awt.GraphicsEnvironment", true, cl)
+				.getMethod("isHeadless").invoke(null);
+			return !Boolean.TRUE.equals(headless);
+		} catch(Exception | LinkageError x) {
+			return false;
+		}
+	}
+	
+	public int
+	getPriority() { return 20; }
+	
+	/*
+	 * The Swing entry points are resolved once, so that dispatching an event
+	 * costs a direct (and inlinable) call instead of a reflective lookup.
+	 * The module does not require <code>java.desktop</code>, hence the handles.
+	 */
+	private static class Swing {
+		static final MethodHandle invokeLater;
+		static final MethodHandle invokeAndWait;
+		static final MethodHandle isEventDispatchThread;
+		
+		static {
+			try {
+				Class<?> c = Class.forName(SWING_UTILITIES);
+				MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+				MethodType run = MethodType.methodType(void.class, Runnable.class);
+				invokeLater = lookup.findStatic(c, "invokeLater", run);
+				invokeAndWait = lookup.findStatic(c, "invokeAndWait", run);
+				isEventDispatchThread = lookup.findStatic (
+					c, "isEventDispatchThread", MethodType.methodType(boolean.class)
+				);
+			} catch(Exception x) {
+				throw new ExceptionInInitializerError(x);
+			}
 		}
 	}
 }
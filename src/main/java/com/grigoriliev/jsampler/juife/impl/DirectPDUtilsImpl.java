@@ -0,0 +1,60 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+package com.grigoriliev.jsampler.juife.impl;
+
+/**
+ * A <code>PDUtilsImpl</code> which runs the commands inline on the caller,
+ * without a thread hop. There is no UI thread - the commands run on whatever
+ * thread submits them, for example a task worker, and may run concurrently.
+ * It is safe to select this implementation only if no UI toolkit is used and the
+ * listeners are thread-safe, as in tests, benchmarks and server-side code.
+ * It is never selected unless requested with <code>juife.pdutils=direct</code>,
+ * or if no other implementation is available.
+ * @author Grigor Iliev
+ */
+public class DirectPDUtilsImpl implements PDUtilsImpl {
+	/** Creates a new instance of <code>DirectPDUtilsImpl</code>, which has no state. */
+	public
+	DirectPDUtilsImpl() { }
+	
+	/** Runs <code>r</code> inline on the calling thread before returning. */
+	public void
+	runOnUiThread(Runnable r) { r.run(); }
+	
+	/** Runs <code>r</code> inline on the calling thread. */
+	public void
+	runOnUiThreadAndWait(Runnable r) throws Exception { r.run(); }
+	
+	/**
+	 * Returns <code>true</code>, so that the callers never try to switch threads.
+	 * This does not make the calling thread a UI thread.
+	 */
+	public boolean
+	isUiThread() { return true; }
+	
+	public String
+	getName() { return "direct"; }
+	
+	public int
+	getPriority() { return -10; }
+}
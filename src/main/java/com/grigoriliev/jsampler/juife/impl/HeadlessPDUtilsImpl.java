@@ -0,0 +1,117 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+package com.grigoriliev.jsampler.juife.impl;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A <code>PDUtilsImpl</code> which doesn't depend on any UI toolkit. The UI thread
+ * is a daemon thread named <code>juife-ui</code> running an event loop, which
+ * executes the posted runnables one after another in the order they are posted.
+ * The thread is started the first time a runnable is posted.
+ * This is the implementation used in headless environments.
+ * @author Grigor Iliev
+ */
+public class HeadlessPDUtilsImpl implements PDUtilsImpl {
+	private final LinkedBlockingQueue<Runnable> queue = new LinkedBlockingQueue<Runnable>();
+	private volatile Thread thread = null;
+	
+	/**
+	 * Creates a new instance of <code>HeadlessPDUtilsImpl</code>. Each instance
+	 * has its own event loop thread, which is not started until a runnable is posted.
+	 */
+	public
+	HeadlessPDUtilsImpl() { }
+	
+	/**
+	 * Causes <code>r.run()</code> to be executed asynchronously on the UI thread.
+	 * This call returns immediately.
+	 */
+	public void
+	runOnUiThread(Runnable r) {
+		if(r == null) throw new NullPointerException();
+		if(thread == null) startThread();
+		queue.add(r);
+	}
+	
+	/**
+	 * Causes <code>r.run()</code> to be executed synchronously on the UI thread.
+	 * This call blocks until <code>r.run()</code> returns. If the current thread
+	 * is the UI thread, <code>r.run()</code> is invoked directly.
+	 * An exception thrown by <code>r.run()</code> is rethrown to the caller.
+	 */
+	public void
+	runOnUiThreadAndWait(Runnable r) throws Exception {
+		if(isUiThread()) {
+			r.run();
+			return;
+		}
+		
+		FutureTask<Object> f = new FutureTask<Object>(r, null);
+		runOnUiThread(f);
+		try { f.get(); }
+		catch(ExecutionException x) {
+			Throwable cause = x.getCause();
+			if(cause instanceof Exception) throw (Exception)cause;
+			if(cause instanceof Error) throw (Error)cause;
+			throw x;
+		}
+	}
+	
+	/** Determines whether the current thread is the UI thread. */
+	public boolean
+	isUiThread() { return Thread.currentThread() == thread; }
+	
+	public String
+	getName() { return "headless"; }
+	
+	public int
+	getPriority() { return 10; }
+	
+	private synchronized void
+	startThread() {
+		if(thread != null) return;
+		
+		Thread t = new Thread(new Runnable() {
+			public void
+			run() { processEvents(); }
+		}, "juife-ui");
+		t.setDaemon(true);
+		thread = t;
+		t.start();
+	}
+	
+	private void
+	processEvents() {
+		for(;;) {
+			Runnable r;
+			try { r = queue.take(); }
+			catch(InterruptedException x) { continue; }
+			
+			try { r.run(); }
+			catch(Throwable t) { t.printStackTrace(); }
+		}
+	}
+}
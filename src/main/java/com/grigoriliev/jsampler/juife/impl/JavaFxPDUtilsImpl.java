@@ -0,0 +1,136 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+package com.grigoriliev.jsampler.juife.impl;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A <code>PDUtilsImpl</code> which uses the JavaFX application thread as UI thread.
+ * Since the JavaFX toolkit must be started by the application, this implementation
+ * is used only when requested with <code>juife.pdutils=javafx</code>.
+ * @author Grigor Iliev
+ */
+public class JavaFxPDUtilsImpl implements PDUtilsImpl {
+	private static final String PLATFORM = "javafx.application.Platform";
+	
+	/**
+	 * Creates a new instance of <code>JavaFxPDUtilsImpl</code>. The JavaFX
+	 * classes are not loaded until the implementation is actually used,
+	 * so the instance can be created even if JavaFX is not present.
+	 */
+	public
+	JavaFxPDUtilsImpl() { }
+	
+	/**
+	 * Causes <code>r.run()</code> to be executed asynchronously on the UI thread.
+	 * This call returns immediately.
+	 */
+	public void
+	runOnUiThread(Runnable r) {
+		try {
+			Fx.runLater.invokeExact(r);
+		} catch(RuntimeException | Error e) {
+			throw e;
+		} catch(Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+	
+	/**
+	 * Causes <code>r.run()</code> to be executed synchronously on the UI thread.
+	 * This call blocks until <code>r.run()</code> returns. If the current thread
+	 * is the JavaFX application thread, <code>r.run()</code> is invoked directly.
+	 * An exception thrown by <code>r.run()</code> is rethrown to the caller.
+	 */
+	public void
+	runOnUiThreadAndWait(Runnable r) throws Exception {
+		if(isUiThread()) {
+			r.run();
+			return;
+		}
+		
+		FutureTask<Object> f = new FutureTask<Object>(r, null);
+		runOnUiThread(f);
+		try { f.get(); }
+		catch(ExecutionException x) {
+			Throwable cause = x.getCause();
+			if(cause instanceof Exception) throw (Exception)cause;
+			if(cause instanceof Error) throw (Error)cause;
+			throw x;
+		}
+	}
+	
+	/** Determines whether the current thread is the JavaFX application thread. */
+	public boolean
+	isUiThread() {
+		try {
+			return (boolean)Fx.isFxApplicationThread.invokeExact();
+		} catch(RuntimeException | Error e) {
+			throw e;
+		} catch(Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+	
+	public String
+	getName() { return "javafx"; }
+	
+	/** Determines whether JavaFX is present. */
+	public boolean
+	isAvailable() {
+		try {
+			Class.forName(PLATFORM, false, JavaFxPDUtilsImpl.class.getClassLoader());
+			return true;
+		} catch(ClassNotFoundException | LinkageError x) {
+			return false;
+		}
+	}
+	
+	public int
+	getPriority() { return 5; }
+	
+	/** The JavaFX entry points, resolved the first time they are needed. */
+	private static class Fx {
+		static final MethodHandle runLater;
+		static final MethodHandle isFxApplicationThread;
+		
+		static {
+			try {
+				Class<?> c = Class.forName(PLATFORM);
+				MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+				runLater = lookup.findStatic (
+					c, "runLater", MethodType.methodType(void.class, Runnable.class)
+				);
+				isFxApplicationThread = lookup.findStatic (
+					c, "isFxApplicationThread", MethodType.methodType(boolean.class)
+				);
+			} catch(Exception x) {
+				throw new ExceptionInInitializerError(x);
+			}
+		}
+	}
+}
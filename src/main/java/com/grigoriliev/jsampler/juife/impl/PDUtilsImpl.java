@@ -22,6 +22,15 @@
 
 package com.grigoriliev.jsampler.juife.impl;
 
+/**
+ * The platform dependent part of {@link com.grigoriliev.jsampler.juife.PDUtils}.
+ * Implementations are discovered as <code>java.util.ServiceLoader</code> providers.
+ * Unless the <code>juife.pdutils</code> system property names an implementation,
+ * the available implementation with the highest priority is used.
+ * Implementations must provide a public no-argument constructor, which should
+ * be cheap, since all providers are instantiated during the selection.
+ * @author Grigor Iliev
+ */
 public interface PDUtilsImpl {
 	/**
 	 * Causes <code>r.run()</code> to be executed asynchronously on the UI thread.
@@ -34,4 +43,34 @@ public interface PDUtilsImpl {
 	 * This call blocks until <code>r.run()</code> returns.
 	 */
 	void runOnUiThreadAndWait(Runnable r) throws Exception;
+	
+	/**
+	 * Determines whether the current thread is the UI thread.
+	 * @return <code>true</code> if the current thread is the UI thread,
+	 * <code>false</code> otherwise or if this cannot be determined.
+	 */
+	default boolean
+	isUiThread() { return false; }
+	
+	/**
+	 * Gets the name used to select this implementation
+	 * via the <code>juife.pdutils</code> system property.
+	 * The default implementation returns the class name.
+	 */
+	default String
+	getName() { return getClass().getName(); }
+	
+	/**
+	 * Determines whether this implementation can be used in the current environment.
+	 * An implementation which is explicitly selected is used regardless of this value.
+	 */
+	default boolean
+	isAvailable() { return true; }
+	
+	/**
+	 * Gets the priority of this implementation. When no implementation is
+	 * explicitly selected, the available one with the highest priority is used.
+	 */
+	default int
+	getPriority() { return 0; }
 }
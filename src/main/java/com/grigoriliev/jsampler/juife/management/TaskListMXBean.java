@@ -0,0 +1,56 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+
+package com.grigoriliev.jsampler.juife.management;
+
+
+/**
+ * The management interface of a {@link com.grigoriliev.jsampler.juife.TaskList}.
+ * @see com.grigoriliev.jsampler.juife.TaskList#setManaged
+ * @author Grigor Iliev
+ */
+public interface TaskListMXBean {
+	/** Gets the name of the task list. */
+	String getName();
+	
+	/** Determines whether the processing of the tasks has been started. */
+	boolean isStarted();
+	
+	/** Determines whether all tasks in the list are done. */
+	boolean isProcessed();
+	
+	/** Determines whether the processing of the tasks has been cancelled. */
+	boolean isCancelled();
+	
+	/** Gets the number of tasks in the list. */
+	int getTaskCount();
+	
+	/** Gets the number of tasks that are done. */
+	int getDoneTaskCount();
+	
+	/** Gets the titles of the tasks that are neither done nor waiting to be started. */
+	String[] getRunningTaskTitles();
+	
+	/** Cancels the processing of the tasks in the list. */
+	void cancel();
+}
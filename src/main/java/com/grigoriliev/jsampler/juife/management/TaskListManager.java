@@ -0,0 +1,74 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+
+package com.grigoriliev.jsampler.juife.management;
+
+import java.util.ArrayList;
+
+import com.grigoriliev.jsampler.juife.Task;
+import com.grigoriliev.jsampler.juife.TaskList;
+
+
+/**
+ * The MXBean of a task list.
+ * @author Grigor Iliev
+ */
+class TaskListManager implements TaskListMXBean {
+	private final TaskList list;
+	
+	TaskListManager(TaskList list) { this.list = list; }
+	
+	public String
+	getName() { return list.getName(); }
+	
+	public boolean
+	isStarted() { return list.isStarted(); }
+	
+	public boolean
+	isProcessed() { return list.isProcessed(); }
+	
+	public boolean
+	isCancelled() { return list.isCancelled(); }
+	
+	public int
+	getTaskCount() { return list.getTasks().length; }
+	
+	public int
+	getDoneTaskCount() {
+		int n = 0;
+		for(Task t : list.getTasks()) if(t.done()) n++;
+		return n;
+	}
+	
+	public String[]
+	getRunningTaskTitles() {
+		ArrayList<String> titles = new ArrayList<String>();
+		for(Task t : list.getTasks()) {
+			if(t.isStarted() && !t.done()) titles.add(t.getTitle());
+		}
+		return titles.toArray(new String[0]);
+	}
+	
+	public void
+	cancel() { list.cancel(); }
+}
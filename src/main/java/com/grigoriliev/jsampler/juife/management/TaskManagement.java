@@ -0,0 +1,119 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+
+package com.grigoriliev.jsampler.juife.management;
+
+import java.lang.management.ManagementFactory;
+import java.util.IdentityHashMap;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.grigoriliev.jsampler.juife.TaskList;
+import com.grigoriliev.jsampler.juife.TaskQueue;
+
+
+/**
+ * Registers the MXBeans of task queues and task lists in the platform MBean server.
+ * The MXBeans are registered under the <code>com.grigoriliev.jsampler.juife</code>
+ * domain with <code>type</code> and <code>name</code> keys, for example
+ * <code>com.grigoriliev.jsampler.juife:type=TaskQueue,name="Queue 1"</code>.
+ * If an MXBean with the same name is already registered, a number is
+ * appended to the name. Normally this class is used by the task queues and
+ * task lists which are {@link TaskQueue#setManaged managed}.
+ * @author Grigor Iliev
+ */
+public final class TaskManagement {
+	/** The domain of the object names of the MXBeans. */
+	public static final String DOMAIN = "com.grigoriliev.jsampler.juife";
+	
+	private static final IdentityHashMap<Object, ObjectName> registered =
+		new IdentityHashMap<Object, ObjectName>();
+	
+	private
+	TaskManagement() { }
+	
+	/**
+	 * Registers an MXBean for the specified task queue, unless already registered.
+	 * @param queue The task queue to register.
+	 */
+	public static void
+	register(TaskQueue queue) {
+		register(queue, "TaskQueue", queue.getName(), new TaskQueueManager(queue));
+	}
+	
+	/**
+	 * Registers an MXBean for the specified task list, unless already registered.
+	 * @param list The task list to register.
+	 */
+	public static void
+	register(TaskList list) {
+		register(list, "TaskList", list.getName(), new TaskListManager(list));
+	}
+	
+	/**
+	 * Unregisters the MXBean of the specified task queue or task list, if registered.
+	 * @param obj The task queue or task list whose MXBean should be unregistered.
+	 */
+	public static synchronized void
+	unregister(Object obj) {
+		ObjectName name = registered.remove(obj);
+		if(name == null) return;
+		
+		try { getServer().unregisterMBean(name); }
+		catch(JMException x) { x.printStackTrace(); }
+	}
+	
+	/**
+	 * Gets the object name under which the MXBean of the specified object is registered.
+	 * @param obj A task queue or task list.
+	 * @return The object name of the MXBean or <code>null</code> if not registered.
+	 */
+	public static synchronized ObjectName
+	getObjectName(Object obj) { return registered.get(obj); }
+	
+	private static synchronized void
+	register(Object obj, String type, String name, Object mbean) {
+		if(registered.containsKey(obj)) return;
+		
+		try {
+			for(int i = 1; ; i++) {
+				String s = i == 1 ? name : name + " (" + i + ")";
+				ObjectName on = new ObjectName (
+					DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(s)
+				);
+				
+				try {
+					getServer().registerMBean(mbean, on);
+					registered.put(obj, on);
+					return;
+				} catch(InstanceAlreadyExistsException x) { }
+			}
+		} catch(JMException x) { x.printStackTrace(); }
+	}
+	
+	private static MBeanServer
+	getServer() { return ManagementFactory.getPlatformMBeanServer(); }
+}
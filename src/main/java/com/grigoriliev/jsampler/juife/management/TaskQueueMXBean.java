@@ -0,0 +1,119 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+
+package com.grigoriliev.jsampler.juife.management;
+
+
+/**
+ * The management interface of a {@link com.grigoriliev.jsampler.juife.TaskQueue}.
+ * The statistics attributes are available only when the metrics of the
+ * queue are enabled, otherwise they are <code>0</code>.
+ * The times are in milliseconds.
+ * @see com.grigoriliev.jsampler.juife.TaskQueue#setManaged
+ * @author Grigor Iliev
+ */
+public interface TaskQueueMXBean {
+	/** Gets the name of the task queue. */
+	String getName();
+	
+	/** Determines whether the task queue is running. */
+	boolean isRunning();
+	
+	/** Determines whether the task queue is stopped. */
+	boolean isStopped();
+	
+	/** Determines whether the task queue is cancelled. */
+	boolean isCancelled();
+	
+	/** Determines whether the queue is empty and there are no running tasks. */
+	boolean isIdle();
+	
+	/** Gets the number of worker threads of the task queue. */
+	int getWorkerCount();
+	
+	/** Gets the capacity of the task queue or <code>0</code> if the queue is unbounded. */
+	int getCapacity();
+	
+	/** Gets the number of pending tasks. */
+	int getPendingTaskCount();
+	
+	/** Gets the title of the task that was fetched first among the running tasks. */
+	String getRunningTaskTitle();
+	
+	/** Gets the titles of all running tasks. */
+	String[] getRunningTaskTitles();
+	
+	/** Determines whether statistics are collected for the task queue. */
+	boolean isMetricsEnabled();
+	
+	/** Enables or disables the collection of statistics for the task queue. */
+	void setMetricsEnabled(boolean b);
+	
+	/** Gets the number of tasks accepted by the queue. */
+	long getAddedTaskCount();
+	
+	/** Gets the number of executed tasks. */
+	long getCompletedTaskCount();
+	
+	/** Gets the number of executed tasks that have finished with errors. */
+	long getFailedTaskCount();
+	
+	/** Gets the number of tasks that have been removed or coalesced without being executed. */
+	long getDiscardedTaskCount();
+	
+	/** Gets the number of tasks dropped without being executed because the queue was full. */
+	long getDroppedTaskCount();
+	
+	/** Gets the number of tasks rejected because the queue was full. */
+	long getRejectedTaskCount();
+	
+	/** Gets the number of tasks that have exceeded their timeout. */
+	long getTimedOutTaskCount();
+	
+	/** Gets the highest number of pending tasks. */
+	long getPeakPendingTaskCount();
+	
+	/** Gets the average number of tasks executed per second. */
+	double getThroughput();
+	
+	/** Gets the mean time the tasks spent in the queue before their execution. */
+	double getMeanWaitTime();
+	
+	/** Gets the 99th percentile of the time the tasks spent in the queue. */
+	double getWaitTime99thPercentile();
+	
+	/** Gets the mean execution time of the tasks. */
+	double getMeanExecutionTime();
+	
+	/** Gets the 99th percentile of the execution time of the tasks. */
+	double getExecutionTime99thPercentile();
+	
+	/** Stops the task queue. The pending tasks are still processed. */
+	void stop();
+	
+	/** Stops the task queue and cancels the execution of all pending tasks. */
+	void cancel();
+	
+	/** Removes all pending tasks. */
+	void removePendingTasks();
+}
@@ -0,0 +1,208 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+
+package com.grigoriliev.jsampler.juife.management;
+
+import com.grigoriliev.jsampler.juife.LatencyHistogram;
+import com.grigoriliev.jsampler.juife.Task;
+import com.grigoriliev.jsampler.juife.TaskQueue;
+import com.grigoriliev.jsampler.juife.TaskQueueMetrics;
+
+
+/**
+ * The MXBean of a task queue.
+ * @author Grigor Iliev
+ */
+class TaskQueueManager implements TaskQueueMXBean {
+	private final TaskQueue queue;
+	
+	TaskQueueManager(TaskQueue queue) { this.queue = queue; }
+	
+	public String
+	getName() { return queue.getName(); }
+	
+	public boolean
+	isRunning() { return queue.isRunning(); }
+	
+	public boolean
+	isStopped() { return queue.isStopped(); }
+	
+	public boolean
+	isCancelled() { return queue.isCancelled(); }
+	
+	public boolean
+	isIdle() { return queue.isIdle(); }
+	
+	public int
+	getWorkerCount() { return queue.getWorkerCount(); }
+	
+	public int
+	getCapacity() { return queue.getCapacity(); }
+	
+	public int
+	getPendingTaskCount() { return queue.getPendingTaskCount(); }
+	
+	public String
+	getRunningTaskTitle() {
+		Task t = queue.getRunningTask();
+		return t == null ? null : t.getTitle();
+	}
+	
+	public String[]
+	getRunningTaskTitles() {
+		Task[] tasks = queue.getRunningTasks();
+		String[] titles = new String[tasks.length];
+		for(int i = 0; i < tasks.length; i++) titles[i] = tasks[i].getTitle();
+		return titles;
+	}
+	
+	public boolean
+	isMetricsEnabled() { return queue.getMetrics() != null; }
+	
+	public void
+	setMetricsEnabled(boolean b) { queue.setMetricsEnabled(b); }
+	
+	/**
+	 * The time in nanoseconds for which a snapshot is reused, so that the
+	 * attributes read together by a client are taken from the same snapshot.
+	 */
+	private static final long SNAPSHOT_LIFETIME = 100000000;
+	
+	/** The last snapshot and the metrics it was taken from. Guarded by <code>this</code>. */
+	private TaskQueueMetrics.Snapshot snapshot = null;
+	private TaskQueueMetrics snapshotMetrics = null;
+	
+	/**
+	 * Gets a snapshot of the queue metrics or <code>null</code> if they are disabled.
+	 * A snapshot is reused for {@link #SNAPSHOT_LIFETIME}, so reading several
+	 * attributes takes a single, consistent snapshot.
+	 */
+	private synchronized TaskQueueMetrics.Snapshot
+	getSnapshot() {
+		TaskQueueMetrics m = queue.getMetrics();
+		if(m == null) {
+			snapshot = null;
+			snapshotMetrics = null;
+			return null;
+		}
+		
+		TaskQueueMetrics.Snapshot s = snapshot;
+		if(m != snapshotMetrics || s == null || System.nanoTime() - s.getTimestamp() > SNAPSHOT_LIFETIME) {
+			s = snapshot = m.getSnapshot();
+			snapshotMetrics = m;
+		}
+		return s;
+	}
+	
+	public long
+	getAddedTaskCount() {
+		TaskQueueMetrics.Snapshot s = getSnapshot();
+		return s == null ? 0 : s.getAddedTaskCount();
+	}
+	
+	public long
+	getCompletedTaskCount() {
+		TaskQueueMetrics.Snapshot s = getSnapshot();
+		return s == null ? 0 : s.getCompletedTaskCount();
+	}
+	
+	public long
+	getFailedTaskCount() {
+		TaskQueueMetrics.Snapshot s = getSnapshot();
+		return s == null ? 0 : s.getFailedTaskCount();
+	}
+	
+	public long
+	getDiscardedTaskCount() {
+		TaskQueueMetrics.Snapshot s = getSnapshot();
+		return s == null ? 0 : s.getDiscardedTaskCount();
+	}
+	
+	public long
+	getDroppedTaskCount() {
+		TaskQueueMetrics.Snapshot s = getSnapshot();
+		return s == null ? 0 : s.getDroppedTaskCount();
+	}
+	
+	public long
+	getRejectedTaskCount() {
+		TaskQueueMetrics.Snapshot s = getSnapshot();
+		return s == null ? 0 : s.getRejectedTaskCount();
+	}
+	
+	public long
+	getTimedOutTaskCount() {
+		TaskQueueMetrics.Snapshot s = getSnapshot();
+		return s == null ? 0 : s.getTimedOutTaskCount();
+	}
+	
+	public long
+	getPeakPendingTaskCount() {
+		TaskQueueMetrics.Snapshot s = getSnapshot();
+		return s == null ? 0 : s.getPeakPendingTaskCount();
+	}
+	
+	public double
+	getThroughput() {
+		TaskQueueMetrics.Snapshot s = getSnapshot();
+		return s == null ? 0 : s.getThroughput();
+	}
+	
+	public double
+	getMeanWaitTime() {
+		TaskQueueMetrics.Snapshot s = getSnapshot();
+		return s == null ? 0 : s.getWaitTime().getMean() / 1000000;
+	}
+	
+	public double
+	getWaitTime99thPercentile() {
+		TaskQueueMetrics.Snapshot s = getSnapshot();
+		return s == null ? 0 : toMillis(s.getWaitTime(), 99);
+	}
+	
+	public double
+	getMeanExecutionTime() {
+		TaskQueueMetrics.Snapshot s = getSnapshot();
+		return s == null ? 0 : s.getExecutionTime().getMean() / 1000000;
+	}
+	
+	public double
+	getExecutionTime99thPercentile() {
+		TaskQueueMetrics.Snapshot s = getSnapshot();
+		return s == null ? 0 : toMillis(s.getExecutionTime(), 99);
+	}
+	
+	private static double
+	toMillis(LatencyHistogram.Snapshot h, double percentile) {
+		return h.getValueAtPercentile(percentile) / 1000000.0;
+	}
+	
+	public void
+	stop() { queue.stop(); }
+	
+	public void
+	cancel() { queue.cancel(); }
+	
+	public void
+	removePendingTasks() { queue.removePendingTasks(); }
+}
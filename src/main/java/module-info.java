@@ -1,4 +1,17 @@
 open module com.grigoriliev.jsampler.juife {
+	requires static java.management;
+	
 	exports com.grigoriliev.jsampler.juife;
 	exports com.grigoriliev.jsampler.juife.event;
-}
\ No newline at end of file
+	exports com.grigoriliev.jsampler.juife.management;
+	exports com.grigoriliev.jsampler.juife.impl;
+	
+	uses com.grigoriliev.jsampler.juife.impl.PDUtilsImpl;
+	
+	provides com.grigoriliev.jsampler.juife.impl.PDUtilsImpl with
+		com.grigoriliev.jsampler.juife.impl.AndroidPDUtilsImpl,
+		com.grigoriliev.jsampler.juife.impl.DefaultPDUtilsImpl,
+		com.grigoriliev.jsampler.juife.impl.HeadlessPDUtilsImpl,
+		com.grigoriliev.jsampler.juife.impl.JavaFxPDUtilsImpl,
+		com.grigoriliev.jsampler.juife.impl.DirectPDUtilsImpl;
+}
@@ -0,0 +1,149 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+package com.grigoriliev.jsampler.juife;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LatencyHistogramTest {
+	@Test
+	public void
+	emptyHistogram() {
+		LatencyHistogram.Snapshot s = new LatencyHistogram().getSnapshot();
+		assertEquals(0, s.getCount());
+		assertEquals(0, s.getMean());
+		assertEquals(0, s.getMax());
+		assertEquals(0, s.getValueAtPercentile(99));
+	}
+	
+	@Test
+	public void
+	smallValuesAreExact() {
+		LatencyHistogram h = new LatencyHistogram();
+		for(int i = 0; i < 16; i++) h.record(i);
+		
+		LatencyHistogram.Snapshot s = h.getSnapshot();
+		assertEquals(16, s.getCount());
+		assertEquals(7.5, s.getMean());
+		assertEquals(15, s.getMax());
+		for(int i = 0; i < 16; i++) {
+			assertEquals(i, s.getValueAtPercentile((i + 1) * 100.0 / 16), "Value #" + i);
+		}
+	}
+	
+	@Test
+	public void
+	relativeErrorIsBounded() {
+		long[] values = {
+			16, 17, 31, 32, 33, 100, 1000, 1023, 1024, 1025, 123456,
+			1000000, 999999999, 1L << 40, (1L << 40) + 1, Long.MAX_VALUE / 3
+		};
+		
+		for(long v : values) {
+			LatencyHistogram h = new LatencyHistogram();
+			h.record(v);
+			// a larger value keeps the maximum from capping the reported value
+			h.record(Long.MAX_VALUE);
+			
+			long p = h.getSnapshot().getValueAtPercentile(50);
+			assertTrue(p >= v, v + " is reported as " + p);
+			assertTrue(p - v < v / 16.0, v + " is reported as " + p);
+		}
+	}
+	
+	@Test
+	public void
+	bucketBoundaries() {
+		// each power of two is split into 16 sub-buckets of equal width
+		for(int shift = 0; shift < 50; shift++) {
+			for(long sub = 16; sub < 32; sub++) {
+				long low = sub << shift;
+				long high = ((sub + 1) << shift) - 1;
+				
+				LatencyHistogram h = new LatencyHistogram();
+				h.record(low);
+				h.record(Long.MAX_VALUE);
+				assertEquals(high, h.getSnapshot().getValueAtPercentile(50), "Bucket of " + low);
+			}
+		}
+	}
+	
+	@Test
+	public void
+	percentiles() {
+		LatencyHistogram h = new LatencyHistogram();
+		for(int i = 1; i <= 1000; i++) h.record(i * 1000L);
+		
+		LatencyHistogram.Snapshot s = h.getSnapshot();
+		assertEquals(1000, s.getCount());
+		assertEquals(500500, s.getMean());
+		assertEquals(1000000, s.getMax());
+		assertEquals(1000000, s.getValueAtPercentile(100));
+		assertEquals(1000, s.getValueAtPercentile(0), 1000 / 16.0);
+		assertEquals(500000, s.getValueAtPercentile(50), 500000 / 16.0);
+		assertEquals(990000, s.getValueAtPercentile(99), 990000 / 16.0);
+	}
+	
+	@Test
+	public void
+	negativeValuesAreRecordedAsZero() {
+		LatencyHistogram h = new LatencyHistogram();
+		h.record(-5);
+		
+		LatencyHistogram.Snapshot s = h.getSnapshot();
+		assertEquals(1, s.getCount());
+		assertEquals(0, s.getMax());
+		assertEquals(0, s.getValueAtPercentile(100));
+	}
+	
+	@Test
+	public void
+	snapshotIsImmutable() {
+		LatencyHistogram h = new LatencyHistogram();
+		h.record(10);
+		LatencyHistogram.Snapshot s = h.getSnapshot();
+		h.record(20);
+		
+		assertEquals(1, s.getCount());
+		assertEquals(10, s.getMax());
+		assertEquals(2, h.getSnapshot().getCount());
+	}
+	
+	@Test
+	public void
+	invalidPercentile() {
+		final LatencyHistogram.Snapshot s = new LatencyHistogram().getSnapshot();
+		assertThrows(IllegalArgumentException.class, new Executable() {
+			public void
+			execute() { s.getValueAtPercentile(-1); }
+		});
+		assertThrows(IllegalArgumentException.class, new Executable() {
+			public void
+			execute() { s.getValueAtPercentile(100.5); }
+		});
+	}
+}
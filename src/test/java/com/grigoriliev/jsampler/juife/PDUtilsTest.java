@@ -0,0 +1,180 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+package com.grigoriliev.jsampler.juife;
+
+import com.grigoriliev.jsampler.juife.impl.DirectPDUtilsImpl;
+import com.grigoriliev.jsampler.juife.impl.PDUtilsImpl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PDUtilsTest {
+	private final boolean batching = PDUtils.isBatchingEnabled();
+	
+	@AfterEach
+	public void
+	tearDown() { PDUtils.setBatchingEnabled(batching); }
+	
+	private static Map<String, PDUtilsImpl>
+	getProviders() {
+		HashMap<String, PDUtilsImpl> m = new HashMap<String, PDUtilsImpl>();
+		for(PDUtilsImpl i : ServiceLoader.load(PDUtilsImpl.class, PDUtils.class.getClassLoader())) {
+			m.put(i.getName(), i);
+		}
+		return m;
+	}
+	
+	@Test
+	public void
+	builtInProviders() {
+		Map<String, PDUtilsImpl> m = getProviders();
+		for(String s : new String[] { "android", "swing", "headless", "javafx", "direct" }) {
+			assertNotNull(m.get(s), s);
+		}
+		
+		assertTrue(m.get("android").getPriority() > m.get("swing").getPriority());
+		assertTrue(m.get("swing").getPriority() > m.get("headless").getPriority());
+		assertTrue(m.get("headless").isAvailable());
+		
+		// direct is never preferred over an available implementation
+		for(PDUtilsImpl i : m.values()) {
+			if(i != m.get("direct")) assertTrue(i.getPriority() > m.get("direct").getPriority());
+		}
+	}
+	
+	@Test
+	public void
+	selectsAvailableProviderWithHighestPriority() {
+		String name = System.getProperty(PDUtils.IMPL_PROPERTY);
+		if(name != null) {
+			assertEquals(name, PDUtils.getImplName());
+			return;
+		}
+		
+		PDUtilsImpl best = null;
+		for(PDUtilsImpl i : getProviders().values()) {
+			if(!i.isAvailable()) continue;
+			if(best == null || i.getPriority() > best.getPriority()) best = i;
+		}
+		assertEquals(best.getName(), PDUtils.getImplName());
+	}
+	
+	@Test
+	public void
+	directRunsInline() throws Exception {
+		DirectPDUtilsImpl impl = new DirectPDUtilsImpl();
+		final Thread caller = Thread.currentThread();
+		final AtomicInteger n = new AtomicInteger();
+		Runnable r = new Runnable() {
+			public void
+			run() {
+				assertSame(caller, Thread.currentThread());
+				n.incrementAndGet();
+			}
+		};
+		
+		impl.runOnUiThread(r);
+		assertEquals(1, n.get());
+		impl.runOnUiThreadAndWait(r);
+		assertEquals(2, n.get());
+		assertTrue(impl.isUiThread());
+	}
+	
+	@Test
+	public void
+	batchedRunnablesRunInOrderOnUiThread() throws Exception {
+		PDUtils.setBatchingEnabled(true);
+		final List<Integer> executed = new ArrayList<Integer>();
+		final AtomicBoolean offUiThread = new AtomicBoolean(false);
+		
+		// more than a single batch
+		final int n = 3000;
+		for(int i = 0; i < n; i++) {
+			final int k = i;
+			PDUtils.runOnUiThread(new Runnable() {
+				public void
+				run() {
+					if(!PDUtils.isUiThread()) offUiThread.set(true);
+					executed.add(k);
+				}
+			});
+		}
+		
+		// the runnables are executed in order, so this one runs after all of the above
+		PDUtils.runOnUiThreadAndWait(new Runnable() {
+			public void
+			run() { executed.add(n); }
+		});
+		
+		assertFalse(offUiThread.get(), "A runnable was executed outside the UI thread");
+		PDUtils.runOnUiThreadAndWait(new Runnable() {
+			public void
+			run() {
+				assertEquals(n + 1, executed.size());
+				for(int i = 0; i <= n; i++) assertEquals(i, executed.get(i).intValue());
+			}
+		});
+	}
+	
+	@Test
+	public void
+	batchedRunAndWaitRethrows() throws Exception {
+		PDUtils.setBatchingEnabled(true);
+		final IllegalStateException error = new IllegalStateException("test");
+		
+		IllegalStateException x = assertThrows(IllegalStateException.class, new Executable() {
+			public void
+			execute() throws Exception {
+				PDUtils.runOnUiThreadAndWait(new Runnable() {
+					public void
+					run() { throw error; }
+				});
+			}
+		});
+		assertSame(error, x);
+		
+		// the batch keeps working after a failure
+		final AtomicBoolean ran = new AtomicBoolean(false);
+		PDUtils.runOnUiThreadAndWait(new Runnable() {
+			public void
+			run() { ran.set(true); }
+		});
+		assertTrue(ran.get());
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+package com.grigoriliev.jsampler.juife;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class StringTableTest {
+	@TempDir
+	File dir;
+	
+	@Test
+	public void
+	writeAndRead() throws Exception {
+		HashMap<String, String> m = new HashMap<String, String>();
+		m.put("b", "Beta");
+		m.put("a", "Alpha");
+		m.put("unicode", "äöü €");
+		m.put("empty", "");
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		StringTable.create(m).write(out);
+		StringTable t = StringTable.read(new ByteArrayInputStream(out.toByteArray()));
+		
+		assertEquals(4, t.size());
+		for(String key : m.keySet()) assertEquals(m.get(key), t.getString(key), key);
+		assertNull(t.get("missing"));
+		assertFalse(t.containsKey("missing"));
+		assertEquals(4, Collections.list(t.getKeys()).size());
+	}
+	
+	@Test
+	public void
+	invalidStream() {
+		assertThrows(IOException.class, new Executable() {
+			public void
+			execute() throws Exception {
+				StringTable.read(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5, 6 }));
+			}
+		});
+	}
+	
+	@Test
+	public void
+	resourceName() {
+		assertEquals("a/b/Labels.strtab", StringTable.getResourceName("a.b.Labels", Locale.ROOT));
+		assertEquals (
+			"a/b/Labels_de_AT.strtab",
+			StringTable.getResourceName("a.b.Labels", new Locale("de", "AT"))
+		);
+	}
+	
+	@Test
+	public void
+	compilerFlattensLocales() throws Exception {
+		File src = new File(dir, "src");
+		File out = new File(dir, "out");
+		writeProperties(src, "Labels.properties", "a = Root A\nb = Root B\nc = Root C\n");
+		writeProperties(src, "Labels_de.properties", "a = De A\nb = De B\n");
+		writeProperties(src, "Labels_de_AT.properties", "a = Österreich A\n");
+		// doesn't belong to the bundle, despite the common prefix
+		writeProperties(src, "LabelsExtra.properties", "a = Extra\n");
+		
+		assertEquals(3, new StringTableCompiler(src, out).compile("test.Labels"));
+		assertFalse(new File(out, "test/LabelsExtra.strtab").exists());
+		
+		StringTable root = readTable(out, "test.Labels", Locale.ROOT);
+		assertEquals(3, root.size());
+		assertEquals("Root A", root.getString("a"));
+		
+		StringTable de = readTable(out, "test.Labels", Locale.GERMAN);
+		assertEquals(3, de.size());
+		assertEquals("De A", de.getString("a"));
+		assertEquals("Root C", de.getString("c"));
+		
+		// the inherited strings are contained in the table itself
+		StringTable at = readTable(out, "test.Labels", new Locale("de", "AT"));
+		assertEquals(3, at.size());
+		assertEquals("Österreich A", at.getString("a"));
+		assertEquals("De B", at.getString("b"));
+		assertEquals("Root C", at.getString("c"));
+	}
+	
+	@Test
+	public void
+	missingTable() throws Exception {
+		assertNull(StringTable.load(StringTableTest.class, "test.Missing", Locale.GERMAN));
+	}
+	
+	private static void
+	writeProperties(File src, String name, String content) throws IOException {
+		File f = new File(src, "test/" + name);
+		f.getParentFile().mkdirs();
+		Files.write(f.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	private static StringTable
+	readTable(File out, String baseName, Locale l) throws IOException {
+		InputStream in = new FileInputStream(new File(out, StringTable.getResourceName(baseName, l)));
+		try { return StringTable.read(in); }
+		finally { in.close(); }
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+package com.grigoriliev.jsampler.juife;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TaskQueueCoalescingTest {
+	private final TaskQueue queue = new TaskQueue();
+	
+	@AfterEach
+	public void
+	tearDown() { queue.cancel(); }
+	
+	private static AbstractTask<Object>
+	createTask(Object key) {
+		AbstractTask<Object> t = new AbstractTask<Object>() {
+			public void
+			run() { }
+		};
+		t.setCoalescingKey(key);
+		return t;
+	}
+	
+	@Test
+	public void
+	noCoalescingByDefault() {
+		Task a = createTask("key");
+		Task b = createTask("key");
+		queue.add(a);
+		queue.add(b);
+		
+		assertArrayEquals(new Task[] { a, b }, queue.getPendingTasks());
+	}
+	
+	@Test
+	public void
+	discardNewKeepsPendingTask() {
+		queue.setCoalescing(TaskQueue.Coalescing.DISCARD_NEW);
+		Task a = createTask("key");
+		Task b = createTask("other");
+		Task c = createTask("key");
+		Task d = createTask(null);
+		Task e = createTask(null);
+		queue.add(a);
+		queue.add(b);
+		queue.add(c);
+		queue.add(d);
+		queue.add(e);
+		
+		// the tasks without key are never coalesced
+		assertArrayEquals(new Task[] { a, b, d, e }, queue.getPendingTasks());
+		assertEquals(4, queue.getPendingTaskCount());
+	}
+	
+	@Test
+	public void
+	replacePendingKeepsPosition() {
+		queue.setCoalescing(TaskQueue.Coalescing.REPLACE_PENDING);
+		Task a = createTask("key");
+		Task b = createTask("other");
+		Task c = createTask("key");
+		Task d = createTask("key");
+		queue.add(a);
+		queue.add(b);
+		queue.add(c);
+		queue.add(d);
+		
+		assertArrayEquals(new Task[] { d, b }, queue.getPendingTasks());
+		assertEquals(2, queue.getPendingTaskCount());
+	}
+	
+	@Test
+	public void
+	replacePendingInPriorityOrder() {
+		queue.setOrder(TaskQueue.Order.PRIORITY);
+		queue.setCoalescing(TaskQueue.Coalescing.REPLACE_PENDING);
+		AbstractTask<Object> a = createTask("key");
+		AbstractTask<Object> b = createTask(null);
+		b.setPriority(1);
+		AbstractTask<Object> c = createTask("key");
+		c.setPriority(2);
+		queue.add(a);
+		queue.add(b);
+		queue.add(c);
+		
+		// the replacing task takes the place of the replaced one
+		assertArrayEquals(new Task[] { b, c }, queue.getPendingTasks());
+	}
+	
+	@Test
+	public void
+	fetchedTaskIsNotReplaced() throws Exception {
+		queue.setCoalescing(TaskQueue.Coalescing.REPLACE_PENDING);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch gate = new CountDownLatch(1);
+		AbstractTask<Object> a = new AbstractTask<Object>() {
+			public void
+			run() {
+				started.countDown();
+				try { gate.await(); }
+				catch(InterruptedException x) { }
+			}
+		};
+		a.setCoalescingKey("key");
+		queue.start();
+		queue.add(a);
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		
+		// the key is released when the task is fetched
+		Task b = createTask("key");
+		queue.add(b);
+		assertArrayEquals(new Task[] { b }, queue.getPendingTasks());
+		
+		gate.countDown();
+		waitForIdle();
+		assertTrue(a.done());
+		assertTrue(b.done());
+	}
+	
+	@Test
+	public void
+	discardedTasksAreCounted() {
+		queue.setMetricsEnabled(true);
+		queue.setCoalescing(TaskQueue.Coalescing.REPLACE_PENDING);
+		queue.add(createTask("key"));
+		queue.add(createTask("key"));
+		queue.add(createTask("key"));
+		
+		TaskQueueMetrics.Snapshot s = queue.getMetrics().getSnapshot();
+		assertEquals(3, s.getAddedTaskCount());
+		assertEquals(2, s.getDiscardedTaskCount());
+		assertEquals(1, s.getPendingTaskCount());
+	}
+	
+	private void
+	waitForIdle() throws Exception {
+		long deadline = System.currentTimeMillis() + 5000;
+		while(!queue.isIdle()) {
+			assertTrue(System.currentTimeMillis() < deadline, "The queue hasn't become idle");
+			Thread.sleep(10);
+		}
+	}
+}
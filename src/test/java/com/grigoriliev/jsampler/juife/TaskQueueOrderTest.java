@@ -0,0 +1,166 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+package com.grigoriliev.jsampler.juife;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TaskQueueOrderTest {
+	private final TaskQueue queue = new TaskQueue();
+	
+	@AfterEach
+	public void
+	tearDown() { queue.cancel(); }
+	
+	private static AbstractTask<Object>
+	createTask(int priority, long deadline) {
+		AbstractTask<Object> t = new AbstractTask<Object>() {
+			public void
+			run() { }
+		};
+		t.setPriority(priority);
+		t.setDeadline(deadline);
+		return t;
+	}
+	
+	@Test
+	public void
+	fifoOrder() {
+		Task a = createTask(1, 0);
+		Task b = createTask(5, 0);
+		Task c = createTask(3, 0);
+		queue.add(a);
+		queue.add(b);
+		queue.add(c);
+		
+		assertArrayEquals(new Task[] { a, b, c }, queue.getPendingTasks());
+	}
+	
+	@Test
+	public void
+	priorityOrder() {
+		queue.setOrder(TaskQueue.Order.PRIORITY);
+		Task a = createTask(1, 0);
+		Task b = createTask(5, 0);
+		Task c = createTask(3, 0);
+		Task d = createTask(5, 0);
+		queue.add(a);
+		queue.add(b);
+		queue.add(c);
+		queue.add(d);
+		
+		// equal priorities keep their FIFO order
+		assertArrayEquals(new Task[] { b, d, c, a }, queue.getPendingTasks());
+	}
+	
+	@Test
+	public void
+	priorityOrderIsKeptWhenExecuting() throws Exception {
+		queue.setOrder(TaskQueue.Order.PRIORITY);
+		final List<Integer> executed = new ArrayList<Integer>();
+		final CountDownLatch done = new CountDownLatch(5);
+		for(int i = 0; i < 5; i++) {
+			final int priority = i;
+			AbstractTask<Object> t = new AbstractTask<Object>() {
+				public void
+				run() {
+					synchronized(executed) { executed.add(priority); }
+					done.countDown();
+				}
+			};
+			t.setPriority(priority);
+			queue.add(t);
+		}
+		queue.start();
+		
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		synchronized(executed) { assertEquals(Arrays.asList(4, 3, 2, 1, 0), executed); }
+	}
+	
+	@Test
+	public void
+	agingPromotesOldTasks() throws Exception {
+		queue.setOrder(TaskQueue.Order.PRIORITY);
+		Task low = createTask(0, 0);
+		queue.add(low);
+		Thread.sleep(50);
+		Task high = createTask(1, 0);
+		queue.add(high);
+		
+		assertArrayEquals(new Task[] { high, low }, queue.getPendingTasks());
+		
+		// the low priority task has waited for more than a priority level
+		queue.setAgingInterval(10);
+		assertArrayEquals(new Task[] { low, high }, queue.getPendingTasks());
+		
+		// one priority level outweighs the waiting time
+		queue.setAgingInterval(10000);
+		assertArrayEquals(new Task[] { high, low }, queue.getPendingTasks());
+	}
+	
+	@Test
+	public void
+	deadlineOrder() {
+		queue.setOrder(TaskQueue.Order.DEADLINE);
+		long now = System.currentTimeMillis();
+		Task a = createTask(0, 0);
+		Task b = createTask(0, now + 3000);
+		Task c = createTask(9, 0);
+		Task d = createTask(0, now + 1000);
+		Task e = createTask(0, now + 2000);
+		queue.add(a);
+		queue.add(b);
+		queue.add(c);
+		queue.add(d);
+		queue.add(e);
+		
+		// the tasks without deadline follow in FIFO order, regardless of priority
+		assertArrayEquals(new Task[] { d, e, b, a, c }, queue.getPendingTasks());
+	}
+	
+	@Test
+	public void
+	switchingToFifoKeepsTheOrderedTasksFirst() {
+		queue.setOrder(TaskQueue.Order.PRIORITY);
+		Task a = createTask(1, 0);
+		Task b = createTask(2, 0);
+		queue.add(a);
+		queue.add(b);
+		
+		queue.setOrder(TaskQueue.Order.FIFO);
+		Task c = createTask(3, 0);
+		queue.add(c);
+		
+		assertArrayEquals(new Task[] { b, a, c }, queue.getPendingTasks());
+	}
+}
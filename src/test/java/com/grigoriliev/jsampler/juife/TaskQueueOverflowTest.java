@@ -0,0 +1,199 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+package com.grigoriliev.jsampler.juife;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TaskQueueOverflowTest {
+	private final TaskQueue queue = new TaskQueue();
+	
+	@AfterEach
+	public void
+	tearDown() { queue.cancel(); }
+	
+	private static AbstractTask<Object>
+	createTask(Object key) {
+		AbstractTask<Object> t = new AbstractTask<Object>() {
+			public void
+			run() { }
+		};
+		t.setCoalescingKey(key);
+		return t;
+	}
+	
+	/** Sets the capacity of the queue to 2 and fills it with the specified tasks. */
+	private void
+	fill(TaskQueue.OverflowPolicy policy, Task a, Task b) {
+		queue.setMetricsEnabled(true);
+		queue.setCapacity(2);
+		queue.setOverflowPolicy(policy);
+		queue.add(a);
+		queue.add(b);
+	}
+	
+	@Test
+	public void
+	invalidCapacity() {
+		assertThrows(IllegalArgumentException.class, new Executable() {
+			public void
+			execute() { queue.setCapacity(-1); }
+		});
+	}
+	
+	@Test
+	public void
+	reject() {
+		Task a = createTask(null);
+		Task b = createTask(null);
+		fill(TaskQueue.OverflowPolicy.REJECT, a, b);
+		
+		assertThrows(RejectedExecutionException.class, new Executable() {
+			public void
+			execute() { queue.add(createTask(null)); }
+		});
+		assertArrayEquals(new Task[] { a, b }, queue.getPendingTasks());
+		assertEquals(1, queue.getMetrics().getSnapshot().getRejectedTaskCount());
+	}
+	
+	@Test
+	public void
+	dropOldest() {
+		Task a = createTask(null);
+		Task b = createTask(null);
+		Task c = createTask(null);
+		fill(TaskQueue.OverflowPolicy.DROP_OLDEST, a, b);
+		queue.add(c);
+		
+		assertArrayEquals(new Task[] { b, c }, queue.getPendingTasks());
+		assertEquals(1, queue.getMetrics().getSnapshot().getDroppedTaskCount());
+	}
+	
+	@Test
+	public void
+	dropNewest() {
+		Task a = createTask(null);
+		Task b = createTask(null);
+		fill(TaskQueue.OverflowPolicy.DROP_NEWEST, a, b);
+		queue.add(createTask(null));
+		
+		assertArrayEquals(new Task[] { a, b }, queue.getPendingTasks());
+		assertEquals(1, queue.getMetrics().getSnapshot().getDroppedTaskCount());
+	}
+	
+	@Test
+	public void
+	coalesce() {
+		Task a = createTask("a");
+		Task b = createTask("b");
+		Task c = createTask("a");
+		fill(TaskQueue.OverflowPolicy.COALESCE, a, b);
+		
+		// the new task takes the place of the task with an equal key
+		queue.add(c);
+		assertArrayEquals(new Task[] { c, b }, queue.getPendingTasks());
+		
+		// without such task the new one is dropped
+		queue.add(createTask("d"));
+		queue.add(createTask(null));
+		assertArrayEquals(new Task[] { c, b }, queue.getPendingTasks());
+		assertEquals(2, queue.getMetrics().getSnapshot().getDroppedTaskCount());
+	}
+	
+	@Test
+	public void
+	blockWaitsForSpace() throws Exception {
+		Task a = createTask(null);
+		Task b = createTask(null);
+		final Task c = createTask(null);
+		fill(TaskQueue.OverflowPolicy.BLOCK, a, b);
+		
+		Thread producer = new Thread() {
+			public void
+			run() { queue.add(c); }
+		};
+		producer.start();
+		producer.join(200);
+		assertTrue(producer.isAlive(), "The producer is not blocked");
+		assertEquals(2, queue.getPendingTaskCount());
+		
+		// the producer is released when the worker takes a task
+		queue.start();
+		producer.join(5000);
+		assertFalse(producer.isAlive(), "The producer is still blocked");
+		
+		long deadline = System.currentTimeMillis() + 5000;
+		while(!c.done()) {
+			assertTrue(System.currentTimeMillis() < deadline, "The task hasn't been executed");
+			Thread.sleep(10);
+		}
+	}
+	
+	@Test
+	public void
+	blockDropsScheduledTasks() throws Exception {
+		fill(TaskQueue.OverflowPolicy.BLOCK, createTask(null), createTask(null));
+		
+		// the shared timer is never blocked by a full queue
+		queue.schedule(createTask(null), 0);
+		long deadline = System.currentTimeMillis() + 5000;
+		while(queue.getMetrics().getSnapshot().getDroppedTaskCount() == 0) {
+			assertTrue(System.currentTimeMillis() < deadline, "The scheduled task hasn't been dropped");
+			Thread.sleep(10);
+		}
+		assertEquals(2, queue.getPendingTaskCount());
+	}
+	
+	@Test
+	public void
+	increasingCapacityReleasesProducers() throws Exception {
+		fill(TaskQueue.OverflowPolicy.BLOCK, createTask(null), createTask(null));
+		final AtomicInteger added = new AtomicInteger();
+		Thread producer = new Thread() {
+			public void
+			run() {
+				queue.add(createTask(null));
+				added.incrementAndGet();
+			}
+		};
+		producer.start();
+		producer.join(200);
+		assertEquals(0, added.get());
+		
+		queue.setCapacity(3);
+		producer.join(TimeUnit.SECONDS.toMillis(5));
+		assertEquals(1, added.get());
+		assertEquals(3, queue.getPendingTaskCount());
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+package com.grigoriliev.jsampler.juife;
+
+import com.grigoriliev.jsampler.juife.event.TaskQueueEvent;
+import com.grigoriliev.jsampler.juife.event.TaskQueueListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+public class TaskQueueStateTest {
+	private static final int PRODUCERS = 4;
+	private static final int TASKS = 20000;
+	
+	@Test
+	public void
+	stateEventsAlternateWithMultipleProducers() throws Exception {
+		final TaskQueue queue = new TaskQueue();
+		queue.setWorkerCount(2);
+		
+		final List<TaskQueueEvent.ID> filledEvents = new ArrayList<TaskQueueEvent.ID>();
+		final List<TaskQueueEvent.ID> idleEvents = new ArrayList<TaskQueueEvent.ID>();
+		queue.addTaskQueueListener(new TaskQueueListener() {
+			public void
+			stateChanged(TaskQueueEvent e) {
+				switch(e.getEventID()) {
+				case FILLED:
+				case EMPTY:
+					synchronized(filledEvents) { filledEvents.add(e.getEventID()); }
+					break;
+				case IDLE:
+				case NOT_IDLE:
+					synchronized(idleEvents) { idleEvents.add(e.getEventID()); }
+					break;
+				default:
+				}
+			}
+		}, DeliveryPolicy.SAME_THREAD);
+		queue.start();
+		
+		final AtomicInteger idleWhileBusy = new AtomicInteger();
+		final CountDownLatch startSignal = new CountDownLatch(1);
+		Thread[] producers = new Thread[PRODUCERS];
+		for(int i = 0; i < producers.length; i++) {
+			producers[i] = new Thread() {
+				public void
+				run() {
+					try { startSignal.await(); }
+					catch(InterruptedException x) { return; }
+					
+					for(int j = 0; j < TASKS; j++) {
+						if(j % 100 != 0) {
+							queue.add(new AbstractTask<Object>() {
+								public void
+								run() { }
+							});
+							// let the queue drain now and then to provoke state transitions
+							if(j % 7 == 0) Thread.yield();
+							continue;
+						}
+						
+						// the queue can't be idle while this task is pending or running
+						final CountDownLatch gate = new CountDownLatch(1);
+						queue.add(new AbstractTask<Object>() {
+							public void
+							run() {
+								try { gate.await(); }
+								catch(InterruptedException x) { }
+							}
+						});
+						if(queue.isIdle()) idleWhileBusy.incrementAndGet();
+						gate.countDown();
+					}
+				}
+			};
+			producers[i].start();
+		}
+		
+		startSignal.countDown();
+		for(Thread t : producers) t.join();
+		
+		long deadline = System.currentTimeMillis() + 10000;
+		while(!queue.isIdle() || !queue.isEmpty()) {
+			if(System.currentTimeMillis() > deadline) fail("The queue hasn't become idle");
+			Thread.sleep(10);
+		}
+		queue.stop();
+		
+		assertEquals(0, idleWhileBusy.get(), "Idle state reported while a task was pending");
+		assertAlternate(filledEvents, TaskQueueEvent.ID.FILLED, TaskQueueEvent.ID.EMPTY);
+		assertAlternate(idleEvents, TaskQueueEvent.ID.NOT_IDLE, TaskQueueEvent.ID.IDLE);
+	}
+	
+	@Test
+	public void
+	startedAndStoppedAreDeliveredInOrder() throws Exception {
+		TaskQueue queue = new TaskQueue();
+		final List<TaskQueueEvent.ID> events = new ArrayList<TaskQueueEvent.ID>();
+		queue.addTaskQueueListener(new TaskQueueListener() {
+			public void
+			stateChanged(TaskQueueEvent e) {
+				switch(e.getEventID()) {
+				case STARTED:
+				case STOPPED:
+					synchronized(events) { events.add(e.getEventID()); }
+					break;
+				default:
+				}
+			}
+		}, DeliveryPolicy.EVENT_EXECUTOR);
+		
+		for(int i = 0; i < 3; i++) {
+			queue.start();
+			queue.stop();
+		}
+		
+		long deadline = System.currentTimeMillis() + 10000;
+		for(;;) {
+			synchronized(events) { if(events.size() == 6) break; }
+			if(System.currentTimeMillis() > deadline) fail("Missing events: " + events);
+			Thread.sleep(10);
+		}
+		assertAlternate(events, TaskQueueEvent.ID.STARTED, TaskQueueEvent.ID.STOPPED);
+	}
+	
+	private static void
+	assertAlternate(List<TaskQueueEvent.ID> events, TaskQueueEvent.ID first, TaskQueueEvent.ID second) {
+		synchronized(events) {
+			assertTrue(events.size() >= 2, "Too few events: " + events.size());
+			for(int i = 0; i < events.size(); i++) {
+				assertEquals(i % 2 == 0 ? first : second, events.get(i), "Event #" + i);
+			}
+			assertEquals(second, events.get(events.size() - 1), "The last event");
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ *   juife - Java User Interface Framework Extensions
+ *
+ *   Copyright (C) 2023 Grigor Iliev <grigor@grigoriliev.com>
+ *
+ *   This file is part of juife.
+ *
+ *   juife is free software; you can redistribute it and/or
+ *   modify it under the terms of the GNU Lesser General Public
+ *   License version 2.1 as published by the Free Software Foundation.
+ *
+ *   juife is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *   Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public
+ *   License along with juife; if not, write to the Free Software
+ *   Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ *   MA  02110-1301, USA
+ */
+
+package com.grigoriliev.jsampler.juife;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+public class TaskQueueSubmitTest {
+	private final CountDownLatch gate = new CountDownLatch(1);
+	private final TaskQueue queue = new TaskQueue();
+	
+	@AfterEach
+	public void
+	tearDown() {
+		gate.countDown();
+		queue.cancel();
+	}
+	
+	/** Starts the queue and occupies its only worker until the gate is opened. */
+	private void
+	blockQueue() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		queue.start();
+		queue.add(new AbstractTask<Object>() {
+			public void
+			run() {
+				started.countDown();
+				try { gate.await(); }
+				catch(InterruptedException x) { }
+			}
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+	}
+	
+	private static AbstractTask<String>
+	createTask(final String result, Object key) {
+		AbstractTask<String> t = new AbstractTask<String>() {
+			public void
+			run() { setResult(result); }
+		};
+		t.setCoalescingKey(key);
+		return t;
+	}
+	
+	private static void
+	assertCancelled(CompletableFuture<?> f) throws Exception {
+		try {
+			f.get(5, TimeUnit.SECONDS);
+			fail("The future is completed normally");
+		} catch(CancellationException x) { }
+		assertTrue(f.isCancelled());
+	}
+	
+	@Test
+	public void
+	completesWithResult() throws Exception {
+		queue.start();
+		assertEquals("a", queue.submit(createTask("a", null)).get(5, TimeUnit.SECONDS));
+	}
+	
+	@Test
+	public void
+	removedTaskIsCancelled() throws Exception {
+		blockQueue();
+		AbstractTask<String> t = createTask("a", null);
+		CompletableFuture<String> f = queue.submit(t);
+		assertTrue(queue.removeTask(t));
+		assertCancelled(f);
+	}
+	
+	@Test
+	public void
+	coalescedTaskIsCancelled() throws Exception {
+		queue.setCoalescing(TaskQueue.Coalescing.REPLACE_PENDING);
+		blockQueue();
+		CompletableFuture<String> f1 = queue.submit(createTask("a", "key"));
+		CompletableFuture<String> f2 = queue.submit(createTask("b", "key"));
+		gate.countDown();
+		assertCancelled(f1);
+		assertEquals("b", f2.get(5, TimeUnit.SECONDS));
+	}
+	
+	@Test
+	public void
+	droppedTaskIsCancelled() throws Exception {
+		queue.setCapacity(1);
+		queue.setOverflowPolicy(TaskQueue.OverflowPolicy.DROP_OLDEST);
+		blockQueue();
+		CompletableFuture<String> f1 = queue.submit(createTask("a", null));
+		CompletableFuture<String> f2 = queue.submit(createTask("b", null));
+		gate.countDown();
+		assertCancelled(f1);
+		assertEquals("b", f2.get(5, TimeUnit.SECONDS));
+	}
+	
+	@Test
+	public void
+	pendingTaskIsCancelledWithQueue() throws Exception {
+		blockQueue();
+		CompletableFuture<String> f = queue.submit(createTask("a", null));
+		queue.cancel();
+		assertCancelled(f);
+	}
+	
+	@Test
+	public void
+	failedTaskCompletesExceptionally() throws Exception {
+		final IllegalStateException error = new IllegalStateException("test");
+		AbstractTask<String> t = new AbstractTask<String>() {
+			public void
+			run() { throw error; }
+		};
+		
+		queue.start();
+		CompletableFuture<String> f1 = queue.submit(t);
+		CompletableFuture<String> f2 = queue.submit(createTask("b", null));
+		
+		try {
+			f1.get(5, TimeUnit.SECONDS);
+			fail("The future is completed normally");
+		} catch(ExecutionException x) {
+			assertTrue(x.getCause() instanceof TaskException);
+			assertSame(error, x.getCause().getCause());
+		}
+		assertTrue(t.done());
+		assertEquals(AbstractTask.UNKNOWN_ERROR, t.getErrorCode());
+		
+		// the worker survives the failure
+		assertEquals("b", f2.get(5, TimeUnit.SECONDS));
+	}
+}